@@ -0,0 +1,65 @@
+package org.example.bench;
+
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentBenchmark {
+
+    @Param({"80", "200"})
+    int width;
+
+    @Param({"24", "60"})
+    int height;
+
+    @Param({"1000", "10000"})
+    int scrollbackMax;
+
+    private TerminalBuffer buffer;
+    private StringBuilder reused;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, height, scrollbackMax);
+        String stream = Workloads.logStream("long", 64 * 1024, 11);
+        while (buffer.getScrollbackSize() < scrollbackMax) {
+            buffer.write(stream);
+        }
+        reused = new StringBuilder((scrollbackMax + height) * (width + 1));
+    }
+
+    @Benchmark
+    public String getScreenContent() {
+        return buffer.getScreenContent();
+    }
+
+    @Benchmark
+    public String getFullContent() {
+        return buffer.getFullContent();
+    }
+
+    @Benchmark
+    public StringBuilder appendFullContent() throws IOException {
+        reused.setLength(0);
+        buffer.appendFullContent(reused);
+        return reused;
+    }
+}
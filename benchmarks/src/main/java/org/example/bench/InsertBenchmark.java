@@ -0,0 +1,58 @@
+package org.example.bench;
+
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"80", "500"})
+    int width;
+
+    @Param({"1", "16", "256"})
+    int length;
+
+    @Param({"false", "true"})
+    boolean overflowWrap;
+
+    private TerminalBuffer buffer;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, 24, 1000);
+        buffer.setInsertOverflowWrap(overflowWrap);
+        text = Workloads.printable(length);
+    }
+
+    @Benchmark
+    public TerminalBuffer insertAtLineStart() {
+        buffer.setCursor(0, 0);
+        buffer.insert(text);
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer insertMidLine() {
+        buffer.setCursor(12, width / 2);
+        buffer.insert(text);
+        return buffer;
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.bench;
+
+import org.example.AnsiParser;
+import org.example.Histogram;
+import org.example.PtyPipeline;
+import org.example.PtyStream;
+import org.example.ScreenSnapshot;
+import org.example.TerminalBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Stress test of PtyPipeline, outside JMH: `sessions` fake ptys write colored log output for
+// `seconds`, each into an 80x24 buffer with `scrollback` lines, rendered with the LATEST policy by
+// a renderer that reads every row of the snapshot. The ptys spew as fast as they are read or, given
+// a `rate` in bytes per second each, block in read() like a real pty until their next bytes are
+// due. Reports the bytes applied per second and the distribution of the time from reading a chunk
+// to applying it.
+//
+//   java -Xmx3g -cp benchmarks/target/benchmarks.jar org.example.bench.PipelineStress 5000 20 200 [rate]
+public final class PipelineStress {
+    private static final long WARMUP_MILLIS = 5000;
+    private static final int BYTES = 0;
+    private static final int UPDATES = 1;
+    private static final int RENDERS = 2;
+    private static final int THROTTLES = 3;
+    private static final int COALESCED = 4;
+    private static final int LATENCY_BUCKETS = 5;
+
+    private PipelineStress() {
+    }
+
+    // Endless pty output: the same block of log lines over and over, at most `maxRead` bytes a read
+    // and, when `rate` is not 0, `rate` bytes a second.
+    private static final class FakePty implements ReadableByteChannel {
+        private final byte[] text;
+        private final int maxRead;
+        private final long rate;
+        private long startNanos;
+        private long sent;
+        private int position;
+        private volatile boolean open = true;
+
+        FakePty(byte[] text, int start, int maxRead, long rate) {
+            this.text = text;
+            this.position = start;
+            this.maxRead = maxRead;
+            this.rate = rate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!open) return -1;
+            if (rate > 0) {
+                if (sent == 0) startNanos = System.nanoTime();
+                // Output comes in bursts of `maxRead` bytes, as a program writes whole lines.
+                long wait;
+                while ((wait = (sent + maxRead) * 1_000_000_000L / rate - (System.nanoTime() - startNanos)) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (!open) return -1;
+                }
+            }
+            int n = Math.min(Math.min(dst.remaining(), maxRead), text.length - position);
+            sent += n;
+            dst.put(text, position, n);
+            position = (position + n) % text.length;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int scrollback = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long rate = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        StringBuilder log = new StringBuilder();
+        String[] lines = Workloads.logStream("short", 64 << 10, 11).split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            log.append(i % 5 == 0 ? "\u001b[31m" : "").append(lines[i]).append("\u001b[0m\r\n");
+        }
+        byte[] text = log.toString().getBytes(StandardCharsets.UTF_8);
+
+        AtomicLong chars = new AtomicLong();
+        Consumer<ScreenSnapshot> renderer = snapshot -> {
+            long n = 0;
+            for (int row = 0; row < snapshot.getHeight(); row++) {
+                n += snapshot.getLine(row).length();
+            }
+            chars.addAndGet(n);
+        };
+
+        PtyPipeline pipeline = new PtyPipeline();
+        PtyStream[] streams = new PtyStream[sessions];
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            TerminalBuffer buffer = new TerminalBuffer(80, 24, scrollback);
+            // Reads of 64 to 4096 bytes, so some coalesce and some fill a chunk on their own.
+            FakePty pty = new FakePty(text, (i * 997) % text.length, 64 << (i % 7), rate);
+            streams[i] = pipeline.attach(pty, buffer, new AnsiParser(buffer), renderer, PtyPipeline.RenderPolicy.LATEST);
+        }
+        long attached = System.nanoTime();
+        // Measure after the streams have settled, not while their threads are still starting.
+        Thread.sleep(WARMUP_MILLIS);
+        long[] before = totals(streams);
+        long from = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        long[] after = totals(streams);
+        double secs = (System.nanoTime() - from) / 1e9;
+        long heap = usedHeapMegabytes();
+        pipeline.close();
+
+        long[] run = new long[after.length];
+        for (int i = 0; i < run.length; i++) {
+            run[i] = after[i] - before[i];
+        }
+        System.out.printf(Locale.ROOT, "%d sessions at %s, %s readers, attached in %.0f ms, heap %d MB%n",
+                sessions, rate > 0 ? rate + " B/s each" : "full speed",
+                pipeline.usesVirtualThreads() ? "virtual" : "platform", (attached - start) / 1e6, heap);
+        System.out.printf(Locale.ROOT, "throughput: %.1f MB/s read, %.0f chunks/s applied, %.0f renders/s%n",
+                run[BYTES] / secs / (1 << 20), run[UPDATES] / secs, run[RENDERS] / secs);
+        System.out.printf(Locale.ROOT, "reader waits: %d, coalesced reads: %d, rendered chars: %d%n",
+                run[THROTTLES], run[COALESCED], chars.get());
+        System.out.printf(Locale.ROOT, "read-to-applied latency: p50 %s, p99 %s, p99.9 %s%n",
+                millis(percentile(run, 50)), millis(percentile(run, 99)), millis(percentile(run, 99.9)));
+    }
+
+    // The counters of all streams added up, followed by their summed latency buckets.
+    private static long[] totals(PtyStream[] streams) {
+        long[] totals = new long[LATENCY_BUCKETS + 65];
+        for (PtyStream stream : streams) {
+            totals[BYTES] += stream.getBytesRead();
+            totals[UPDATES] += stream.getUpdateCount();
+            totals[RENDERS] += stream.getRenderCount();
+            totals[THROTTLES] += stream.getThrottleCount();
+            totals[COALESCED] += stream.getCoalescedReads();
+            Histogram latency = stream.getLatencyNanos();
+            for (int b = 0; b < 65; b++) {
+                totals[LATENCY_BUCKETS + b] += latency.getBucketCount(b);
+            }
+        }
+        return totals;
+    }
+
+    // Upper bound of the bucket holding the percentile, as Histogram.getPercentile() computes it.
+    private static long percentile(long[] totals, double percentile) {
+        long count = 0;
+        for (int b = 0; b < 65; b++) count += totals[LATENCY_BUCKETS + b];
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int b = 0; b < 65; b++) {
+            seen += totals[LATENCY_BUCKETS + b];
+            if (seen >= rank) return b == 0 ? 0 : (1L << b) - 1;
+        }
+        return 0;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f ms", nanos / 1e6);
+    }
+
+    private static long usedHeapMegabytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+}
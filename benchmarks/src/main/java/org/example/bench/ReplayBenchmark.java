@@ -0,0 +1,96 @@
+package org.example.bench;
+
+import org.example.Color;
+import org.example.SessionPlayer;
+import org.example.SessionRecorder;
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// A four-hour recording of an 80x24 terminal with 10 000 scrollback lines: log output at about
+// 20 lines a second with colored lines, and a full-screen redraw every few minutes. seek() jumps to
+// random times; replay() is the headless replay of the whole recording.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ReplayBenchmark {
+    private static final long HOURS = 4;
+
+    @Param({"262144", "1048576", "4194304"})
+    int keyframeBytes;
+
+    private Path file;
+    private FileChannel channel;
+    private SessionPlayer player;
+    private final Random random = new Random(3);
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("replay", ".rec");
+        TerminalBuffer buffer = new TerminalBuffer(80, 24, 10_000);
+        String[] lines = Workloads.logStream("short", 1 << 20, 7).split("\n");
+        Random random = new Random(1);
+        long[] clock = {0};
+        long end = TimeUnit.HOURS.toNanos(HOURS);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE);
+             SessionRecorder recorder = new SessionRecorder(buffer, out, keyframeBytes, () -> clock[0])) {
+            for (int i = 0; clock[0] < end; i++) {
+                clock[0] += random.nextInt(100_000_000);
+                if (i % 5000 == 4999) {
+                    buffer.enterAlternateScreen();
+                    for (int row = 0; row < 24; row++) {
+                        buffer.setCursor(row, 0);
+                        buffer.write(lines[(i + row) % lines.length]);
+                    }
+                    buffer.exitAlternateScreen();
+                } else {
+                    buffer.setAttributes(i % 7 == 0 ? Color.RED : Color.DEFAULT, Color.DEFAULT, false, false, false);
+                    buffer.write(lines[i % lines.length]);
+                    buffer.write("\n");
+                }
+            }
+        }
+        channel = FileChannel.open(file);
+        player = new SessionPlayer(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public TerminalBuffer seek() throws IOException {
+        long time = (long) (random.nextDouble() * player.getDuration(TimeUnit.MICROSECONDS));
+        return player.seek(time, TimeUnit.MICROSECONDS);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public TerminalBuffer replay() throws IOException {
+        return player.replay();
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.bench;
+
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResizeBenchmark {
+
+    @Param({"short", "long"})
+    String workload;
+
+    @Param({"100000"})
+    int scrollbackMax;
+
+    private TerminalBuffer buffer;
+    private boolean wide = false;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, scrollbackMax);
+        String stream = Workloads.logStream(workload, 64 * 1024, 7);
+        while (buffer.getScrollbackSize() < scrollbackMax) {
+            buffer.write(stream);
+        }
+    }
+
+    // Alternates between 80x24 and 120x40, reflowing the whole history each time.
+    @Benchmark
+    public int resize() {
+        wide = !wide;
+        buffer.resize(wide ? 120 : 80, wide ? 40 : 24);
+        return buffer.getScrollbackSize();
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.bench;
+
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollBenchmark {
+
+    @Param({"80"})
+    int width;
+
+    @Param({"24"})
+    int height;
+
+    @Param({"0", "1000", "100000"})
+    int scrollbackMax;
+
+    private TerminalBuffer buffer;
+    private char[] line;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, height, scrollbackMax);
+        line = new char[width + 1];
+        for (int i = 0; i < line.length - 1; i++) {
+            line[i] = (char) ('a' + i % 26);
+        }
+        line[line.length - 1] = '\n';
+    }
+
+    @Benchmark
+    public TerminalBuffer insertEmptyLineAtBottom() {
+        buffer.insertEmptyLineAtBottom();
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer writeFullLineAndNewLine() {
+        buffer.write(line, 0, line.length);
+        return buffer;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.bench;
+
+import org.example.StyleRuns;
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollbackAccessBenchmark {
+
+    @Param({"80"})
+    int width;
+
+    @Param({"24"})
+    int height;
+
+    @Param({"1000", "100000"})
+    int scrollbackMax;
+
+    private TerminalBuffer buffer;
+    private final StyleRuns runs = new StyleRuns();
+    private int seed = 1;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, height, scrollbackMax);
+        String stream = Workloads.logStream("short", 64 * 1024, 7);
+        while (buffer.getScrollbackSize() < scrollbackMax) {
+            buffer.write(stream);
+        }
+    }
+
+    private int nextRow() {
+        seed = seed * 1103515245 + 12345;
+        return (seed >>> 1) % buffer.getScrollbackSize();
+    }
+
+    @Benchmark
+    public char getCharAt() {
+        return buffer.getCharAt(nextRow(), 5, true);
+    }
+
+    @Benchmark
+    public String getLine() {
+        return buffer.getLine(nextRow(), true);
+    }
+
+    @Benchmark
+    public char renderViewport() {
+        int top = Math.max(0, nextRow() - height);
+        char acc = 0;
+        for (int row = top; row < top + height; row++) {
+            for (int col = 0; col < width; col++) {
+                acc ^= buffer.getCharAt(row, col, true);
+            }
+        }
+        return acc;
+    }
+
+    // A renderer that reads each cell's char and attributes.
+    @Benchmark
+    public char renderViewportCells() {
+        int top = Math.max(0, nextRow() - height);
+        char acc = 0;
+        for (int row = top; row < top + height; row++) {
+            for (int col = 0; col < width; col++) {
+                acc ^= buffer.getCharAt(row, col, true);
+                acc ^= (char) buffer.getAttributesAt(row, col, true).fg.ordinal();
+            }
+        }
+        return acc;
+    }
+
+    // The same viewport drawn one style run at a time.
+    @Benchmark
+    public char renderViewportRuns() {
+        int top = Math.max(0, nextRow() - height);
+        char acc = 0;
+        buffer.styleRuns(top, top + height, runs);
+        while (runs.next()) {
+            char[] chars = runs.chars();
+            for (int i = runs.charOffset(); i < runs.charOffset() + runs.charCount(); i++) {
+                acc ^= chars[i];
+            }
+            acc ^= (char) runs.attributes().fg.ordinal();
+        }
+        return acc;
+    }
+}
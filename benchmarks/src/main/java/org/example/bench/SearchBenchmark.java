@@ -0,0 +1,63 @@
+package org.example.bench;
+
+import org.example.SearchHit;
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    int scrollbackMax;
+
+    private TerminalBuffer buffer;
+    private final Pattern pattern = Pattern.compile("took \\d+ ms");
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(80, 24, scrollbackMax);
+        String stream = Workloads.logStream("short", 64 * 1024, 7);
+        while (buffer.getScrollbackSize() < scrollbackMax) {
+            buffer.write(stream);
+        }
+    }
+
+    @Benchmark
+    public SearchHit literalMiss() {
+        return buffer.findNext("no such text", 0, 0);
+    }
+
+    @Benchmark
+    public SearchHit literalRareBackward() {
+        return buffer.findPrevious("SUCCESS BUILD SUCCESS BUILD", Integer.MAX_VALUE, 0);
+    }
+
+    @Benchmark
+    public SearchHit regexMiss() {
+        return buffer.findNext(pattern, 0, 0);
+    }
+
+    @Benchmark
+    public List<SearchHit> regexParallelAll() {
+        return buffer.history().parallelSearch(pattern);
+    }
+}
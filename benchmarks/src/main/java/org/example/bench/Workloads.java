@@ -0,0 +1,56 @@
+package org.example.bench;
+
+import java.util.Random;
+
+final class Workloads {
+    private static final String[] WORDS = {
+            "INFO", "DEBUG", "WARN", "compiling", "module", "org.example", "TerminalBuffer", "took",
+            "ms", "[main]", "Downloaded", "from", "central:", "tests", "passed", "BUILD", "SUCCESS"
+    };
+
+    private Workloads() {
+    }
+
+    static String printable(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('!' + i % 94));
+        }
+        return sb.toString();
+    }
+
+    // Roughly `size` chars of log-like output. "short" lines fit the screen, "long" lines wrap
+    // several times, and "newlines" is mostly empty lines as produced by progress output.
+    static String logStream(String kind, int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size + 512);
+        while (sb.length() < size) {
+            switch (kind) {
+                case "short":
+                    appendWords(sb, random, 3 + random.nextInt(6));
+                    sb.append('\n');
+                    break;
+                case "long":
+                    appendWords(sb, random, 60 + random.nextInt(120));
+                    sb.append('\n');
+                    break;
+                case "newlines":
+                    if (random.nextInt(4) == 0) {
+                        appendWords(sb, random, 1 + random.nextInt(3));
+                    }
+                    sb.append('\n');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown workload: " + kind);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendWords(StringBuilder sb, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.bench;
+
+import org.example.TerminalBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Param({"80", "200"})
+    int width;
+
+    @Param({"24", "60"})
+    int height;
+
+    @Param({"1000", "100000"})
+    int scrollbackMax;
+
+    @Param({"short", "long", "newlines"})
+    String workload;
+
+    private TerminalBuffer buffer;
+    private String chunk;
+    private char[] chunkChars;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, height, scrollbackMax);
+        chunk = Workloads.logStream(workload, CHUNK_SIZE, 42);
+        chunkChars = chunk.toCharArray();
+    }
+
+    @Benchmark
+    public TerminalBuffer writeString() {
+        buffer.write(chunk);
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer writeCharArray() {
+        buffer.write(chunkChars, 0, chunkChars.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer writeCharArrayBatched() {
+        buffer.beginBatch();
+        buffer.write(chunkChars, 0, chunkChars.length);
+        buffer.endBatch();
+        return buffer;
+    }
+}
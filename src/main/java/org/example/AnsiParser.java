@@ -0,0 +1,537 @@
+package org.example;
+
+// VT100/xterm escape sequence parser driving a TerminalBuffer. The state machine follows Paul
+// Williams' DEC parser: a table maps (state, character class) to an action and a next state.
+// Parameters are collected into a reused int[] and printable runs are handed to the buffer in one
+// write call, so parsing in the steady state does not allocate.
+public class AnsiParser implements CharSink {
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int OSC_STRING = 7;
+    private static final int DCS_ENTRY = 8;
+    private static final int DCS_PARAM = 9;
+    private static final int DCS_INTERMEDIATE = 10;
+    private static final int DCS_PASSTHROUGH = 11;
+    private static final int DCS_IGNORE = 12;
+    private static final int SOS_PM_APC_STRING = 13;
+    private static final int STATE_COUNT = 14;
+
+    private static final int NONE = 0;
+    private static final int PRINT = 1;
+    private static final int EXECUTE = 2;
+    private static final int COLLECT = 3;
+    private static final int PARAM = 4;
+    private static final int ESC_DISPATCH = 5;
+    private static final int CSI_DISPATCH = 6;
+
+    // Column 0x80 stands for every character outside ASCII.
+    private static final int CLASSES = 0x81;
+    private static final int NON_ASCII = 0x80;
+
+    private static final byte[] TABLE = new byte[STATE_COUNT * CLASSES];
+
+    private static final int MAX_PARAMS = 16;
+    private static final int MAX_PARAM_VALUE = 65535;
+    private static final int TAB_WIDTH = 8;
+    private static final Color[] ANSI_COLORS = {
+            Color.BLACK, Color.RED, Color.GREEN, Color.YELLOW,
+            Color.BLUE, Color.MAGENTA, Color.CYAN, Color.WHITE,
+            Color.BRIGHT_BLACK, Color.BRIGHT_RED, Color.BRIGHT_GREEN, Color.BRIGHT_YELLOW,
+            Color.BRIGHT_BLUE, Color.BRIGHT_MAGENTA, Color.BRIGHT_CYAN, Color.BRIGHT_WHITE
+    };
+
+    static {
+        for (int state = 0; state < STATE_COUNT; state++) {
+            range(state, 0x00, NON_ASCII, NONE, state);
+        }
+
+        range(GROUND, 0x00, 0x1F, EXECUTE, GROUND);
+        range(GROUND, 0x20, 0x7E, PRINT, GROUND);
+        range(GROUND, NON_ASCII, NON_ASCII, PRINT, GROUND);
+
+        range(ESCAPE, 0x00, 0x1F, EXECUTE, ESCAPE);
+        range(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        range(ESCAPE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+        range(ESCAPE, '[', '[', NONE, CSI_ENTRY);
+        range(ESCAPE, ']', ']', NONE, OSC_STRING);
+        range(ESCAPE, 'P', 'P', NONE, DCS_ENTRY);
+        range(ESCAPE, 'X', 'X', NONE, SOS_PM_APC_STRING);
+        range(ESCAPE, '^', '_', NONE, SOS_PM_APC_STRING);
+
+        range(ESCAPE_INTERMEDIATE, 0x00, 0x1F, EXECUTE, ESCAPE_INTERMEDIATE);
+        range(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        range(ESCAPE_INTERMEDIATE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+
+        range(CSI_ENTRY, 0x00, 0x1F, EXECUTE, CSI_ENTRY);
+        range(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        range(CSI_ENTRY, 0x30, 0x39, PARAM, CSI_PARAM);
+        range(CSI_ENTRY, ':', ':', NONE, CSI_IGNORE);
+        range(CSI_ENTRY, ';', ';', PARAM, CSI_PARAM);
+        range(CSI_ENTRY, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+        range(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        range(CSI_PARAM, 0x00, 0x1F, EXECUTE, CSI_PARAM);
+        range(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        range(CSI_PARAM, 0x30, 0x39, PARAM, CSI_PARAM);
+        range(CSI_PARAM, ':', ':', NONE, CSI_IGNORE);
+        range(CSI_PARAM, ';', ';', PARAM, CSI_PARAM);
+        range(CSI_PARAM, 0x3C, 0x3F, NONE, CSI_IGNORE);
+        range(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        range(CSI_INTERMEDIATE, 0x00, 0x1F, EXECUTE, CSI_INTERMEDIATE);
+        range(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        range(CSI_INTERMEDIATE, 0x30, 0x3F, NONE, CSI_IGNORE);
+        range(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        range(CSI_IGNORE, 0x00, 0x1F, EXECUTE, CSI_IGNORE);
+        range(CSI_IGNORE, 0x40, 0x7E, NONE, GROUND);
+
+        range(DCS_ENTRY, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+        range(DCS_ENTRY, 0x30, 0x39, PARAM, DCS_PARAM);
+        range(DCS_ENTRY, ':', ':', NONE, DCS_IGNORE);
+        range(DCS_ENTRY, ';', ';', PARAM, DCS_PARAM);
+        range(DCS_ENTRY, 0x3C, 0x3F, COLLECT, DCS_PARAM);
+        range(DCS_ENTRY, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+
+        range(DCS_PARAM, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+        range(DCS_PARAM, 0x30, 0x39, PARAM, DCS_PARAM);
+        range(DCS_PARAM, ':', ':', NONE, DCS_IGNORE);
+        range(DCS_PARAM, ';', ';', PARAM, DCS_PARAM);
+        range(DCS_PARAM, 0x3C, 0x3F, NONE, DCS_IGNORE);
+        range(DCS_PARAM, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+
+        range(DCS_INTERMEDIATE, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+        range(DCS_INTERMEDIATE, 0x30, 0x3F, NONE, DCS_IGNORE);
+        range(DCS_INTERMEDIATE, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+
+        // OSC strings end with BEL (xterm) or ST, which arrives as ESC \ and goes through ESCAPE.
+        range(OSC_STRING, 0x07, 0x07, NONE, GROUND);
+
+        // Transitions that apply from every state.
+        for (int state = 0; state < STATE_COUNT; state++) {
+            range(state, 0x18, 0x18, EXECUTE, GROUND);
+            range(state, 0x1A, 0x1A, EXECUTE, GROUND);
+            range(state, 0x1B, 0x1B, NONE, ESCAPE);
+        }
+    }
+
+    private static void range(int state, int from, int to, int action, int next) {
+        for (int c = from; c <= to; c++) {
+            TABLE[state * CLASSES + c] = (byte) (action << 4 | next);
+        }
+    }
+
+    private final TerminalBuffer buffer;
+    private final int[] params = new int[MAX_PARAMS];
+    private final char[] scratch = new char[4096];
+    private final char[] single = new char[1];
+
+    private int state = GROUND;
+    private int paramCount;
+    private int intermediates;
+    private int intermediateCount;
+
+    private Color fg = Color.DEFAULT;
+    private Color bg = Color.DEFAULT;
+    private boolean bold;
+    private boolean italic;
+    private boolean underline;
+
+    private int savedRow;
+    private int savedCol;
+    private Color savedFg = Color.DEFAULT;
+    private Color savedBg = Color.DEFAULT;
+    private boolean savedBold;
+    private boolean savedItalic;
+    private boolean savedUnderline;
+
+    public AnsiParser(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void write(CharSequence text) {
+        int length = text.length();
+        for (int pos = 0; pos < length; ) {
+            int n = Math.min(scratch.length, length - pos);
+            // Keep surrogate pairs within one chunk so the buffer sees whole code points.
+            if (n < length - pos && Character.isHighSurrogate(text.charAt(pos + n - 1))) {
+                n--;
+            }
+            for (int i = 0; i < n; i++) {
+                scratch[i] = text.charAt(pos + i);
+            }
+            write(scratch, 0, n);
+            pos += n;
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        buffer.beginBatch();
+    }
+
+    @Override
+    public void endBatch() {
+        buffer.endBatch();
+    }
+
+    // Each call is applied to the buffer as one batch.
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        buffer.beginBatch();
+        try {
+            parse(chars, offset, length);
+        } finally {
+            buffer.endBatch();
+        }
+    }
+
+    private void parse(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            char ch = chars[pos];
+
+            if (state == GROUND && isPrintable(ch)) {
+                int runEnd = pos + 1;
+                while (runEnd < end && isPrintable(chars[runEnd])) {
+                    runEnd++;
+                }
+                buffer.write(chars, pos, runEnd - pos);
+                pos = runEnd;
+                continue;
+            }
+
+            int entry = TABLE[state * CLASSES + (ch < NON_ASCII ? ch : NON_ASCII)];
+            int next = entry & 0x0F;
+            if (next != state && (next == ESCAPE || next == CSI_ENTRY || next == DCS_ENTRY)) {
+                clear();
+            }
+            perform(entry >> 4, ch);
+            state = next;
+            pos++;
+        }
+    }
+
+    private static boolean isPrintable(char ch) {
+        return ch >= 0x20 && ch != 0x7F;
+    }
+
+    private void clear() {
+        for (int i = 0; i < paramCount; i++) {
+            params[i] = 0;
+        }
+        paramCount = 0;
+        intermediates = 0;
+        intermediateCount = 0;
+    }
+
+    private void perform(int action, char ch) {
+        switch (action) {
+            case PRINT:
+                single[0] = ch;
+                buffer.write(single, 0, 1);
+                break;
+            case EXECUTE:
+                execute(ch);
+                break;
+            case COLLECT:
+                intermediates = intermediates << 8 | ch;
+                intermediateCount++;
+                break;
+            case PARAM:
+                if (paramCount == 0) paramCount = 1;
+                if (ch == ';') {
+                    if (paramCount < MAX_PARAMS) paramCount++;
+                } else {
+                    int i = paramCount - 1;
+                    params[i] = Math.min(MAX_PARAM_VALUE, params[i] * 10 + (ch - '0'));
+                }
+                break;
+            case ESC_DISPATCH:
+                escDispatch(ch);
+                break;
+            case CSI_DISPATCH:
+                csiDispatch(ch);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void execute(char ch) {
+        switch (ch) {
+            case '\b':
+                buffer.moveLeft(1);
+                break;
+            case '\t':
+                buffer.moveRight(TAB_WIDTH - buffer.getCursorCol() % TAB_WIDTH);
+                break;
+            case '\n':
+            case 0x0B:
+            case '\f':
+                buffer.lineFeed();
+                break;
+            case '\r':
+                buffer.carriageReturn();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void escDispatch(char ch) {
+        if (intermediateCount != 0) return;
+
+        switch (ch) {
+            case '7':
+                saveCursor();
+                break;
+            case '8':
+                restoreCursor();
+                break;
+            case 'D':
+            case 'E':
+                buffer.lineFeed();
+                break;
+            case 'M':
+                buffer.moveUp(1);
+                break;
+            case 'c':
+                fg = Color.DEFAULT;
+                bg = Color.DEFAULT;
+                bold = false;
+                italic = false;
+                underline = false;
+                applyAttributes();
+                buffer.clearAll();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void csiDispatch(char ch) {
+        if (intermediateCount == 1 && intermediates == '?' && (ch == 'h' || ch == 'l')) {
+            setPrivateModes(ch == 'h');
+            return;
+        }
+        // Other private sequences (ESC [ ? ...) and sequences with intermediates are not supported.
+        if (intermediateCount != 0) return;
+
+        int row = buffer.getCursorRow();
+        int col = buffer.getCursorCol();
+        switch (ch) {
+            case 'A':
+                buffer.moveUp(param(0, 1));
+                break;
+            case 'B':
+                buffer.moveDown(param(0, 1));
+                break;
+            case 'C':
+                buffer.moveRight(param(0, 1));
+                break;
+            case 'D':
+                buffer.moveLeft(param(0, 1));
+                break;
+            case 'E':
+                buffer.setCursor(row + param(0, 1), 0);
+                break;
+            case 'F':
+                buffer.setCursor(row - param(0, 1), 0);
+                break;
+            case 'G':
+            case '`':
+                buffer.setCursor(row, param(0, 1) - 1);
+                break;
+            case 'd':
+                buffer.setCursor(param(0, 1) - 1, col);
+                break;
+            case 'H':
+            case 'f':
+                buffer.setCursor(param(0, 1) - 1, param(1, 1) - 1);
+                break;
+            case 'J':
+                eraseInDisplay(param(0, 0), row, col);
+                break;
+            case 'K':
+                eraseInLine(param(0, 0), row, col);
+                break;
+            case 'm':
+                selectGraphicRendition();
+                break;
+            case 's':
+                saveCursor();
+                break;
+            case 'u':
+                restoreCursor();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // DEC private modes. Only the alternate screen is supported: 1049, and the older 47 and 1047,
+    // which are treated the same way.
+    private void setPrivateModes(boolean set) {
+        for (int i = 0; i < paramCount; i++) {
+            int mode = params[i];
+            if (mode != 47 && mode != 1047 && mode != 1049) continue;
+            if (set) {
+                buffer.enterAlternateScreen();
+            } else {
+                buffer.exitAlternateScreen();
+                Attributes restored = buffer.getAttributes();
+                fg = restored.fg;
+                bg = restored.bg;
+                bold = restored.bold;
+                italic = restored.italic;
+                underline = restored.underline;
+            }
+        }
+    }
+
+    private int param(int index, int defaultValue) {
+        if (index >= paramCount || params[index] == 0) return defaultValue;
+        return params[index];
+    }
+
+    private void eraseInDisplay(int mode, int row, int col) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        switch (mode) {
+            case 0:
+                buffer.fillLine(row, col, width, ' ');
+                for (int r = row + 1; r < height; r++) {
+                    buffer.fillLine(r, ' ');
+                }
+                break;
+            case 1:
+                for (int r = 0; r < row; r++) {
+                    buffer.fillLine(r, ' ');
+                }
+                buffer.fillLine(row, 0, col + 1, ' ');
+                break;
+            case 2:
+                buffer.clearScreen();
+                buffer.setCursor(row, col);
+                break;
+            case 3:
+                buffer.clearScrollback();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void eraseInLine(int mode, int row, int col) {
+        switch (mode) {
+            case 0:
+                buffer.fillLine(row, col, buffer.getWidth(), ' ');
+                break;
+            case 1:
+                buffer.fillLine(row, 0, col + 1, ' ');
+                break;
+            case 2:
+                buffer.fillLine(row, ' ');
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void selectGraphicRendition() {
+        if (paramCount == 0) {
+            resetAttributes();
+        }
+        for (int i = 0; i < paramCount; i++) {
+            int code = params[i];
+            if (code == 0) {
+                resetAttributes();
+            } else if (code == 1) {
+                bold = true;
+            } else if (code == 3) {
+                italic = true;
+            } else if (code == 4) {
+                underline = true;
+            } else if (code == 22) {
+                bold = false;
+            } else if (code == 23) {
+                italic = false;
+            } else if (code == 24) {
+                underline = false;
+            } else if (code >= 30 && code <= 37) {
+                fg = ANSI_COLORS[code - 30];
+            } else if (code == 39) {
+                fg = Color.DEFAULT;
+            } else if (code >= 40 && code <= 47) {
+                bg = ANSI_COLORS[code - 40];
+            } else if (code == 49) {
+                bg = Color.DEFAULT;
+            } else if (code >= 90 && code <= 97) {
+                fg = ANSI_COLORS[code - 90 + 8];
+            } else if (code >= 100 && code <= 107) {
+                bg = ANSI_COLORS[code - 100 + 8];
+            } else if (code == 38 || code == 48) {
+                i = extendedColor(code == 38, i);
+            }
+        }
+        applyAttributes();
+    }
+
+    // Handles 38;5;n and 48;5;n for the 16 standard colors and skips 256-color and RGB forms,
+    // which the Color enum cannot represent. Returns the index of the last parameter consumed.
+    private int extendedColor(boolean foreground, int i) {
+        if (i + 1 >= paramCount) return i;
+        int kind = params[i + 1];
+        if (kind == 5 && i + 2 < paramCount) {
+            int index = params[i + 2];
+            if (index < ANSI_COLORS.length) {
+                if (foreground) fg = ANSI_COLORS[index];
+                else bg = ANSI_COLORS[index];
+            }
+            return i + 2;
+        }
+        if (kind == 2) {
+            return Math.min(paramCount - 1, i + 4);
+        }
+        return i + 1;
+    }
+
+    private void resetAttributes() {
+        fg = Color.DEFAULT;
+        bg = Color.DEFAULT;
+        bold = false;
+        italic = false;
+        underline = false;
+    }
+
+    private void applyAttributes() {
+        buffer.setAttributes(fg, bg, bold, italic, underline);
+    }
+
+    private void saveCursor() {
+        savedRow = buffer.getCursorRow();
+        savedCol = buffer.getCursorCol();
+        savedFg = fg;
+        savedBg = bg;
+        savedBold = bold;
+        savedItalic = italic;
+        savedUnderline = underline;
+    }
+
+    private void restoreCursor() {
+        buffer.setCursor(savedRow, savedCol);
+        fg = savedFg;
+        bg = savedBg;
+        bold = savedBold;
+        italic = savedItalic;
+        underline = savedUnderline;
+        applyAttributes();
+    }
+}
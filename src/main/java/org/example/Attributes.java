@@ -1,20 +1,79 @@
 package org.example;
 
 
-public class Attributes {
-    public Color fg = Color.DEFAULT;
-    public Color bg = Color.DEFAULT;
-    public boolean bold = false;
-    public boolean italic = false;
-    public boolean underline = false;
+// Immutable, interned cell style. Every combination of colors and style flags has exactly one
+// instance, so attributes can be compared by identity and shared by any number of cells.
+public final class Attributes {
+    static final short DEFAULT_CODE = 0;
+    // The code takes the low 13 bits of a stored style; Line keeps cell flags above them.
+    static final int CODE_MASK = (1 << 13) - 1;
+
+    private static final Color[] COLORS = Color.values();
+    private static final int COLOR_MASK = 0x1F;
+    private static final int BG_SHIFT = 5;
+    private static final int BOLD = 1 << 10;
+    private static final int ITALIC = 1 << 11;
+    private static final int UNDERLINE = 1 << 12;
+
+    private static final Attributes[] PALETTE = new Attributes[1 << 13];
+
+    static {
+        for (Color fg : COLORS) {
+            for (Color bg : COLORS) {
+                for (int flags = 0; flags < 8; flags++) {
+                    Attributes a = new Attributes(fg, bg, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+                    PALETTE[a.code] = a;
+                }
+            }
+        }
+    }
+
+    public static final Attributes DEFAULT = PALETTE[DEFAULT_CODE];
+
+    public final Color fg;
+    public final Color bg;
+    public final boolean bold;
+    public final boolean italic;
+    public final boolean underline;
+    private final short code;
+
+    private Attributes(Color fg, Color bg, boolean bold, boolean italic, boolean underline) {
+        this.fg = fg;
+        this.bg = bg;
+        this.bold = bold;
+        this.italic = italic;
+        this.underline = underline;
+        this.code = encode(fg, bg, bold, italic, underline);
+    }
+
+    public static Attributes of(Color fg, Color bg, boolean bold, boolean italic, boolean underline) {
+        return PALETTE[encode(fg, bg, bold, italic, underline)];
+    }
 
     public Attributes copy() {
-        Attributes a = new Attributes();
-        a.fg = this.fg;
-        a.bg = this.bg;
-        a.bold = this.bold;
-        a.italic = this.italic;
-        a.underline = this.underline;
-        return a;
+        return this;
+    }
+
+    // Packs the attributes into 13 bits: fg ordinal, bg ordinal, then bold/italic/underline.
+    private static short encode(Color fg, Color bg, boolean bold, boolean italic, boolean underline) {
+        int code = fg.ordinal() | (bg.ordinal() << BG_SHIFT);
+        if (bold) code |= BOLD;
+        if (italic) code |= ITALIC;
+        if (underline) code |= UNDERLINE;
+        return (short) code;
+    }
+
+    short encode() {
+        return code;
+    }
+
+    static Attributes decode(short style) {
+        return PALETTE[style & CODE_MASK];
+    }
+
+    @Override
+    public String toString() {
+        return "Attributes[fg=" + fg + ", bg=" + bg + ", bold=" + bold
+                + ", italic=" + italic + ", underline=" + underline + "]";
     }
 }
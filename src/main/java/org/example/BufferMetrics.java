@@ -0,0 +1,103 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and histograms for one TerminalBuffer, attached with setMetrics(). Without it the buffer
+// does no bookkeeping at all. The write-side figures are updated only by the writer thread; the
+// content-access figures may be updated by any reader thread.
+public final class BufferMetrics implements BufferMetricsMBean {
+    private final AtomicLong charsWritten = new AtomicLong();
+    private final AtomicLong writeCalls = new AtomicLong();
+    private final AtomicLong insertCalls = new AtomicLong();
+    private final AtomicLong linesScrolled = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong clears = new AtomicLong();
+    private final LongAdder contentAccessCalls = new LongAdder();
+    private final LongAdder contentAccessChars = new LongAdder();
+
+    private final Histogram writeChunkSizes = new Histogram();
+    private final Histogram writeLatencyNanos = new Histogram();
+
+    // Registers these metrics with the platform MBean server under
+    // org.example:type=TerminalBuffer,name="<name>" and returns the name used.
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.example:type=TerminalBuffer,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    void onWrite(int chars, long nanos) {
+        Counters.add(writeCalls, 1);
+        Counters.add(charsWritten, chars);
+        writeChunkSizes.record(chars);
+        writeLatencyNanos.record(nanos);
+    }
+
+    void onInsert(int chars, long nanos) {
+        Counters.add(insertCalls, 1);
+        Counters.add(charsWritten, chars);
+        writeChunkSizes.record(chars);
+        writeLatencyNanos.record(nanos);
+    }
+
+    void onScroll() {
+        Counters.add(linesScrolled, 1);
+    }
+
+    void onEvict(int lines) {
+        Counters.add(evictions, lines);
+    }
+
+    void onClear() {
+        Counters.add(clears, 1);
+    }
+
+    void onAccess(int chars) {
+        contentAccessCalls.increment();
+        contentAccessChars.add(chars);
+    }
+
+    @Override public long getCharsWritten() { return charsWritten.get(); }
+    @Override public long getWriteCalls() { return writeCalls.get(); }
+    @Override public long getInsertCalls() { return insertCalls.get(); }
+    @Override public long getLinesScrolled() { return linesScrolled.get(); }
+    @Override public long getEvictions() { return evictions.get(); }
+    @Override public long getClears() { return clears.get(); }
+    @Override public long getContentAccessCalls() { return contentAccessCalls.sum(); }
+    @Override public long getContentAccessChars() { return contentAccessChars.sum(); }
+
+    public Histogram getWriteChunkSizes() { return writeChunkSizes; }
+    public Histogram getWriteLatencyNanos() { return writeLatencyNanos; }
+
+    @Override public long getWriteChunkP50() { return writeChunkSizes.getPercentile(50); }
+    @Override public long getWriteChunkP99() { return writeChunkSizes.getPercentile(99); }
+    @Override public long getWriteChunkMax() { return writeChunkSizes.getMax(); }
+    @Override public long getWriteLatencyNanosP50() { return writeLatencyNanos.getPercentile(50); }
+    @Override public long getWriteLatencyNanosP99() { return writeLatencyNanos.getPercentile(99); }
+    @Override public long getWriteLatencyNanosMax() { return writeLatencyNanos.getMax(); }
+
+    // Zeroes everything. Values recorded concurrently with the reset may be lost.
+    @Override
+    public void reset() {
+        charsWritten.set(0);
+        writeCalls.set(0);
+        insertCalls.set(0);
+        linesScrolled.set(0);
+        evictions.set(0);
+        clears.set(0);
+        contentAccessCalls.reset();
+        contentAccessChars.reset();
+        writeChunkSizes.reset();
+        writeLatencyNanos.reset();
+    }
+}
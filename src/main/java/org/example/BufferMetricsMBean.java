@@ -0,0 +1,22 @@
+package org.example;
+
+// JMX view of BufferMetrics.
+public interface BufferMetricsMBean {
+    long getCharsWritten();
+    long getWriteCalls();
+    long getInsertCalls();
+    long getLinesScrolled();
+    long getEvictions();
+    long getClears();
+    long getContentAccessCalls();
+    long getContentAccessChars();
+
+    long getWriteChunkP50();
+    long getWriteChunkP99();
+    long getWriteChunkMax();
+    long getWriteLatencyNanosP50();
+    long getWriteLatencyNanosP99();
+    long getWriteLatencyNanosMax();
+
+    void reset();
+}
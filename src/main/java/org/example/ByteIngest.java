@@ -0,0 +1,106 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Decodes UTF-8 bytes into a TerminalBuffer or any other CharSink, such as an AnsiParser. Sequences split across reads are carried over in the
+// input buffer until the rest arrives; both buffers are allocated once and reused for every call.
+public class ByteIngest {
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final CharSink sink;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer in;
+    private final CharBuffer out;
+
+    public ByteIngest(CharSink sink) {
+        this(sink, DEFAULT_CAPACITY);
+    }
+
+    public ByteIngest(CharSink sink, int capacity) {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("capacity must hold a full UTF-8 sequence: " + capacity);
+        }
+        this.sink = sink;
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.in = ByteBuffer.allocate(capacity);
+        this.out = CharBuffer.allocate(capacity);
+    }
+
+    public void feed(ByteBuffer src) {
+        while (src.hasRemaining()) {
+            int n = Math.min(in.remaining(), src.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + n);
+            in.put(src);
+            src.limit(limit);
+            decode(false);
+        }
+    }
+
+    public void feed(byte[] src, int offset, int length) {
+        feed(ByteBuffer.wrap(src, offset, length));
+    }
+
+    // Performs a single read from the channel. Returns the number of bytes read, or -1 at end of
+    // stream, in which case any incomplete trailing sequence is flushed as a replacement character.
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        int n = channel.read(in);
+        if (n < 0) {
+            finish();
+        } else if (n > 0) {
+            decode(false);
+        }
+        return n;
+    }
+
+    // Reads the channel until end of stream and returns the total number of bytes consumed.
+    public long transferFrom(ReadableByteChannel channel) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = readFrom(channel)) >= 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    public void finish() {
+        decode(true);
+        decoder.flush(out);
+        flushOut();
+        decoder.reset();
+    }
+
+    // Everything decoded from one chunk of input reaches the sink as a single batch.
+    private void decode(boolean endOfInput) {
+        in.flip();
+        sink.beginBatch();
+        try {
+            CoderResult result;
+            do {
+                result = decoder.decode(in, out, endOfInput);
+                flushOut();
+            } while (result.isOverflow());
+        } finally {
+            sink.endBatch();
+        }
+        in.compact();
+    }
+
+    // The sink gets the text in pieces that end wherever the buffers fill; TerminalBuffer keeps
+    // a wrap or scroll left pending at the end of one write for the next.
+    private void flushOut() {
+        if (out.position() > 0) {
+            sink.write(out.array(), 0, out.position());
+            out.clear();
+        }
+    }
+}
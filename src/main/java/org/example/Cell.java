@@ -6,10 +6,15 @@ public class Cell {
 
     public Cell(char ch, Attributes attr) {
         this.ch = ch;
-        this.attr = attr.copy();
+        this.attr = attr;
+    }
+
+    Cell(char ch, short style) {
+        this.ch = ch;
+        this.attr = Attributes.decode(style);
     }
 
     public static Cell empty() {
-        return new Cell(' ', new Attributes());
+        return new Cell(' ', Attributes.DEFAULT);
     }
 }
@@ -0,0 +1,70 @@
+package org.example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Buffered big-endian reads from a blocking channel, the counterpart of ChannelOutput.
+final class ChannelInput {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10).flip();
+
+    ChannelInput(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    byte getByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    short getShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    int getInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    int getVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = getByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("malformed length");
+    }
+
+    byte[] getRecord() throws IOException {
+        byte[] record = new byte[getVarInt()];
+        int offset = 0;
+        while (offset < record.length) {
+            require(1);
+            int count = Math.min(record.length - offset, buffer.remaining());
+            buffer.get(record, offset, count);
+            offset += count;
+        }
+        return record;
+    }
+
+    // Makes at least `bytes` bytes (at most the buffer size) available.
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("snapshot ended early");
+            }
+        }
+        buffer.flip();
+    }
+}
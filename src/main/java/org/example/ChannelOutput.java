@@ -0,0 +1,81 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Buffered big-endian writes to a blocking channel, for buffer snapshots.
+final class ChannelOutput {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+
+    ChannelOutput(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    void putByte(int value) throws IOException {
+        require(1);
+        buffer.put((byte) value);
+    }
+
+    void putShort(short value) throws IOException {
+        require(2);
+        buffer.putShort(value);
+    }
+
+    void putInt(int value) throws IOException {
+        require(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        require(8);
+        buffer.putLong(value);
+    }
+
+    // Seven bits per byte, low bits first; most records are shorter than 128 bytes.
+    void putVarInt(int value) throws IOException {
+        require(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    void putRecord(byte[] record) throws IOException {
+        putVarInt(record.length);
+        put(ByteBuffer.wrap(record));
+    }
+
+    void putRecord(ByteBuffer record) throws IOException {
+        putVarInt(record.remaining());
+        put(record);
+    }
+
+    void put(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining()) drain();
+            int count = Math.min(src.remaining(), buffer.remaining());
+            buffer.put(buffer.position(), src, src.position(), count);
+            buffer.position(buffer.position() + count);
+            src.position(src.position() + count);
+        }
+    }
+
+    void flush() throws IOException {
+        drain();
+    }
+
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,10 @@
+package org.example;
+
+public interface CharSink {
+    void write(char[] chars, int offset, int length);
+
+    // Bracket a group of writes that belong together, such as one read from the pty.
+    default void beginBatch() {}
+
+    default void endBatch() {}
+}
@@ -0,0 +1,80 @@
+package org.example;
+
+// Read-only CharSequence over a range of stored lines, each followed by '\n' as in
+// getFullContent(). Characters are read from the line storage on demand; only lines on disk are decoded.
+final class ContentView implements CharSequence {
+    private final TerminalBuffer buffer;
+    private final int firstLine;
+    private final int width;
+    private final int start;
+    private final int length;
+
+    // Last line decoded from disk scrollback, so sequential reads decode each line once.
+    private Line scratch;
+    private int scratchIndex = -1;
+
+    ContentView(TerminalBuffer buffer, int firstLine, int lineCount, int width) {
+        this(buffer, firstLine, width, 0, lineCount * (width + 1));
+    }
+
+    private ContentView(TerminalBuffer buffer, int firstLine, int width, int start, int length) {
+        this.buffer = buffer;
+        this.firstLine = firstLine;
+        this.width = width;
+        this.start = start;
+        this.length = length;
+    }
+
+    private Line line(int index) {
+        if (index == scratchIndex) return scratch;
+        if (scratch == null) scratch = new Line(width);
+        Line line = buffer.storedLine(index, scratch);
+        scratchIndex = line == scratch ? index : -1;
+        return line;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int pos = start + index;
+        int line = pos / (width + 1);
+        int col = pos - line * (width + 1);
+        return col == width ? '\n' : line(firstLine + line).chars[col];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + "), length " + length);
+        }
+        return new ContentView(buffer, firstLine, width, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        int pos = start;
+        int end = start + length;
+        while (pos < end) {
+            int line = pos / (width + 1);
+            int col = pos - line * (width + 1);
+            int n = Math.min(end - pos, width - col);
+            if (n > 0) {
+                sb.append(line(firstLine + line).chars, col, n);
+                pos += n;
+            }
+            if (pos < end) {
+                sb.append('\n');
+                pos++;
+            }
+        }
+        return sb.toString();
+    }
+}
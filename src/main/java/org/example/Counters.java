@@ -0,0 +1,19 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Increments for counters that one thread updates and any thread reads. With a single writer a
+// plain read and add, published with lazySet, is enough; there is no race to retry.
+final class Counters {
+    private Counters() {
+    }
+
+    static void add(AtomicLong counter, long n) {
+        counter.lazySet(counter.get() + n);
+    }
+
+    static void add(AtomicLongArray counters, int index, long n) {
+        counters.lazySet(index, counters.get(index) + n);
+    }
+}
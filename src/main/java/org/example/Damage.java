@@ -0,0 +1,112 @@
+package org.example;
+
+import java.util.Arrays;
+
+// Screen changes since the last TerminalBuffer.collectDamage() call. Renderers should first shift
+// their picture up by getScrollDelta() rows, then repaint the dirty column span of each dirty row.
+// Row marks are already expressed in post-scroll coordinates.
+public class Damage {
+    private final int width;
+    private final int height;
+    private final int[] dirtyFrom;
+    private final int[] dirtyTo;
+
+    private int dirtyRows;
+    private int scrollDelta;
+    private int cursorRow;
+    private int cursorCol;
+    private int previousCursorRow;
+    private int previousCursorCol;
+
+    Damage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.dirtyFrom = new int[height];
+        this.dirtyTo = new int[height];
+        reset();
+    }
+
+    public int getScrollDelta() { return scrollDelta; }
+
+    public boolean isEmpty() {
+        return dirtyRows == 0 && scrollDelta == 0 && !isCursorMoved();
+    }
+
+    public boolean isRowDirty(int row) {
+        return dirtyFrom[row] < dirtyTo[row];
+    }
+
+    public int getDirtyFrom(int row) { return dirtyFrom[row]; }
+    public int getDirtyTo(int row) { return dirtyTo[row]; }
+
+    // Returns the first dirty row at or after `row`, or -1 if there is none.
+    public int nextDirtyRow(int row) {
+        if (dirtyRows == 0) return -1;
+        for (int r = Math.max(0, row); r < height; r++) {
+            if (dirtyFrom[r] < dirtyTo[r]) return r;
+        }
+        return -1;
+    }
+
+    public int getDirtyRowCount() { return dirtyRows; }
+
+    public boolean isCursorMoved() {
+        return cursorRow != previousCursorRow || cursorCol != previousCursorCol;
+    }
+
+    public int getCursorRow() { return cursorRow; }
+    public int getCursorCol() { return cursorCol; }
+    public int getPreviousCursorRow() { return previousCursorRow; }
+    public int getPreviousCursorCol() { return previousCursorCol; }
+
+    void mark(int row, int fromCol, int toCol) {
+        if (dirtyFrom[row] >= dirtyTo[row]) {
+            dirtyRows++;
+            dirtyFrom[row] = fromCol;
+            dirtyTo[row] = toCol;
+        } else {
+            dirtyFrom[row] = Math.min(dirtyFrom[row], fromCol);
+            dirtyTo[row] = Math.max(dirtyTo[row], toCol);
+        }
+    }
+
+    void markAll() {
+        Arrays.fill(dirtyFrom, 0);
+        Arrays.fill(dirtyTo, width);
+        dirtyRows = height;
+    }
+
+    void scroll(int lines) {
+        scrollDelta += lines;
+        // Once a screenful has scrolled in since the last reset, every row is dirty in full.
+        if (scrollDelta - lines >= height) return;
+        if (scrollDelta >= height) {
+            markAll();
+            return;
+        }
+        for (int r = 0; r < lines; r++) {
+            if (dirtyFrom[r] < dirtyTo[r]) dirtyRows--;
+        }
+        System.arraycopy(dirtyFrom, lines, dirtyFrom, 0, height - lines);
+        System.arraycopy(dirtyTo, lines, dirtyTo, 0, height - lines);
+        for (int r = height - lines; r < height; r++) {
+            dirtyFrom[r] = 0;
+            dirtyTo[r] = width;
+        }
+        dirtyRows += lines;
+    }
+
+    void setCursor(int previousRow, int previousCol, int row, int col) {
+        this.previousCursorRow = previousRow;
+        this.previousCursorCol = previousCol;
+        this.cursorRow = row;
+        this.cursorCol = col;
+    }
+
+    void reset() {
+        Arrays.fill(dirtyFrom, width);
+        Arrays.fill(dirtyTo, 0);
+        dirtyRows = 0;
+        scrollDelta = 0;
+    }
+}
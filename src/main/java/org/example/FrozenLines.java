@@ -0,0 +1,90 @@
+package org.example;
+
+import java.util.Arrays;
+
+// Circular store of scrollback lines in their frozen LineCodec form, oldest first. Grows by doubling
+// up to its capacity; once full, appending evicts the oldest record.
+final class FrozenLines {
+    private static final int INITIAL_SLOTS = 64;
+
+    private final int capacity;
+
+    private byte[][] records;
+    private int head = 0;
+    private int size = 0;
+
+    FrozenLines(int capacity) {
+        this.capacity = capacity;
+        this.records = new byte[Math.min(capacity, INITIAL_SLOTS)][];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    byte[] get(int index) {
+        int slot = head + index;
+        if (slot >= records.length) slot -= records.length;
+        return records[slot];
+    }
+
+    // Appends the record and returns the evicted oldest one, or null if there was room.
+    byte[] append(byte[] record) {
+        if (capacity == 0) return record;
+
+        if (size == capacity) {
+            byte[] evicted = records[head];
+            records[head] = record;
+            head++;
+            if (head == records.length) head = 0;
+            return evicted;
+        }
+
+        if (size == records.length) {
+            grow();
+        }
+        int tail = head + size;
+        if (tail >= records.length) tail -= records.length;
+        records[tail] = record;
+        size++;
+        return null;
+    }
+
+    byte[] removeFirst() {
+        byte[] record = records[head];
+        records[head] = null;
+        head++;
+        if (head == records.length) head = 0;
+        size--;
+        return record;
+    }
+
+    byte[] removeLast() {
+        int tail = head + size - 1;
+        if (tail >= records.length) tail -= records.length;
+        byte[] record = records[tail];
+        records[tail] = null;
+        size--;
+        return record;
+    }
+
+    void clear() {
+        Arrays.fill(records, null);
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int newLength = (int) Math.min(capacity, Math.max(INITIAL_SLOTS, 2L * records.length));
+        byte[][] grown = new byte[newLength][];
+        for (int i = 0; i < size; i++) {
+            grown[i] = get(i);
+        }
+        records = grown;
+        head = 0;
+    }
+}
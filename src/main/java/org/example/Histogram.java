@@ -0,0 +1,57 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Distribution of non-negative values in power-of-two buckets: bucket 0 holds 0 and bucket i holds
+// [2^(i-1), 2^i). Values are recorded by a single thread; any thread may read them.
+public final class Histogram {
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long max;
+
+    void record(long value) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, value));
+        Counters.add(counts, bucket, 1);
+        if (value > max) max = value;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    // Upper bound of the bucket containing the given percentile (0-100), or 0 if nothing was
+    // recorded. Accurate to within a factor of two.
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(max, i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max = 0;
+    }
+}
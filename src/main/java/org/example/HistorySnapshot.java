@@ -0,0 +1,220 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Immutable view of the scrollback and screen taken by TerminalBuffer.history(), for bulk work
+// that should not hold up the writer. Rows are numbered as in contentView(). The bulk operations
+// split the rows into chunks and process them in parallel on the common fork/join pool.
+public final class HistorySnapshot {
+    private static final int CHUNK_LINES = 4096;
+    private static final int EXPORT_WINDOW_CHUNKS = 64;
+
+    private final int width;
+    private final MappedScrollback.View disk;
+    private final int diskLines;
+    private final byte[][] records;
+
+    HistorySnapshot(int width, MappedScrollback.View disk, byte[][] records) {
+        this.width = width;
+        this.disk = disk;
+        this.diskLines = disk == null ? 0 : (int) disk.size();
+        this.records = records;
+    }
+
+    public int getWidth() { return width; }
+
+    public int getLineCount() {
+        return diskLines + records.length;
+    }
+
+    public String getLine(int row) {
+        return new String(text(row, new Line(width), new RowText()).chars);
+    }
+
+    // Lines in row order, without the '\n'. Splits in halves, so lines().parallel() uses all cores.
+    public Stream<String> lines() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Spliterator<String> spliterator() {
+        return new LineSpliterator(0, getLineCount());
+    }
+
+    // All matches of the pattern within single rows, in row and column order.
+    public List<SearchHit> parallelSearch(Pattern pattern) {
+        return chunks().parallel()
+                .mapToObj(chunk -> search(chunk, pattern))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    public long countMatches(Pattern pattern) {
+        return chunks().parallel().mapToLong(chunk -> search(chunk, pattern).size()).sum();
+    }
+
+    // Writes the content as UTF-8, one '\n'-terminated line per row. Chunks are encoded in parallel
+    // a window at a time and written in order.
+    public void export(Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int chunkCount = chunkCount();
+            for (int first = 0; first < chunkCount; first += EXPORT_WINDOW_CHUNKS) {
+                ByteBuffer[] encoded = IntStream.range(first, Math.min(chunkCount, first + EXPORT_WINDOW_CHUNKS))
+                        .parallel()
+                        .mapToObj(chunk -> StandardCharsets.UTF_8.encode(CharBuffer.wrap(render(chunk))))
+                        .toArray(ByteBuffer[]::new);
+                for (ByteBuffer buffer : encoded) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    // Full content in the format of TerminalBuffer.getFullContent(). Large histories are rendered
+    // in parallel.
+    // Plain rows take width + 1 chars each and are copied straight into place; if any row has wide
+    // characters or clusters, the chunks are rendered separately and joined.
+    @Override
+    public String toString() {
+        char[] content = new char[getLineCount() * (width + 1)];
+        IntStream chunks = chunks();
+        if (getLineCount() > 4 * CHUNK_LINES) {
+            chunks = chunks.parallel();
+        }
+        boolean plain = chunks.allMatch(chunk -> {
+            Line scratch = new Line(width);
+            RowText text = new RowText();
+            int end = chunkEnd(chunk);
+            for (int row = chunk * CHUNK_LINES; row < end; row++) {
+                char[] chars = text(row, scratch, text).chars;
+                if (chars.length != width) return false;
+                System.arraycopy(chars, 0, content, row * (width + 1), width);
+                content[row * (width + 1) + width] = '\n';
+            }
+            return true;
+        });
+        if (plain) return new String(content);
+
+        IntStream rendered = chunks();
+        if (getLineCount() > 4 * CHUNK_LINES) {
+            rendered = rendered.parallel();
+        }
+        StringBuilder[] parts = rendered.mapToObj(this::render).toArray(StringBuilder[]::new);
+        StringBuilder sb = new StringBuilder(Arrays.stream(parts).mapToInt(StringBuilder::length).sum());
+        for (StringBuilder part : parts) {
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    // Text of the row in `text`. Decodes only the chars of plain scrollback records.
+    private RowText text(int row, Line scratch, RowText text) {
+        if (row < diskLines) {
+            disk.read(row, scratch);
+            text.set(scratch);
+        } else if (LineCodec.isComplex(records[row - diskLines])) {
+            LineCodec.decode(ByteBuffer.wrap(records[row - diskLines]), 0, scratch);
+            text.set(scratch);
+        } else {
+            LineCodec.decodeChars(ByteBuffer.wrap(records[row - diskLines]), 0, scratch.chars);
+            text.setPlain(scratch.chars);
+        }
+        return text;
+    }
+
+    private int chunkCount() {
+        return (getLineCount() + CHUNK_LINES - 1) / CHUNK_LINES;
+    }
+
+    private IntStream chunks() {
+        return IntStream.range(0, chunkCount());
+    }
+
+    private int chunkEnd(int chunk) {
+        return Math.min(getLineCount(), (chunk + 1) * CHUNK_LINES);
+    }
+
+    private List<SearchHit> search(int chunk, Pattern pattern) {
+        TextMatcher matcher = TextMatcher.regex(pattern);
+        Line scratch = new Line(width);
+        RowText text = new RowText();
+        List<SearchHit> hits = new ArrayList<>();
+        int end = chunkEnd(chunk);
+        for (int row = chunk * CHUNK_LINES; row < end; row++) {
+            char[] chars = text(row, scratch, text).chars;
+            int at = matcher.find(chars, 0);
+            while (at >= 0) {
+                hits.add(TerminalBuffer.hit(row, text, at, matcher.matchEnd));
+                at = matcher.find(chars, matcher.matchEnd > at ? matcher.matchEnd : at + 1);
+            }
+        }
+        return hits;
+    }
+
+    private StringBuilder render(int chunk) {
+        StringBuilder sb = new StringBuilder(CHUNK_LINES * (width + 1));
+        Line scratch = new Line(width);
+        RowText text = new RowText();
+        int end = chunkEnd(chunk);
+        for (int row = chunk * CHUNK_LINES; row < end; row++) {
+            sb.append(text(row, scratch, text).chars).append('\n');
+        }
+        return sb;
+    }
+
+    private final class LineSpliterator implements Spliterator<String> {
+        private final Line scratch = new Line(width);
+        private final RowText text = new RowText();
+        private int row;
+        private final int end;
+
+        LineSpliterator(int row, int end) {
+            this.row = row;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (row >= end) return false;
+            action.accept(new String(text(row++, scratch, text).chars));
+            return true;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            int mid = (row + end) >>> 1;
+            if (mid - row < 256) return null;
+            LineSpliterator prefix = new LineSpliterator(row, mid);
+            row = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - row;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.example;
+
+import java.util.Arrays;
+
+final class Line {
+    // Cell flags stored in the styles above the attribute code. A wide character takes two cells:
+    // its char is in the first and the second is a blank WIDE_TAIL. A CLUSTER cell's text is in
+    // `clusters`, and its char is only the first UTF-16 unit of that text.
+    static final short WIDE_TAIL = 1 << 13;
+    static final short CLUSTER = 1 << 14;
+    static final short CELL_FLAGS = WIDE_TAIL | CLUSTER;
+
+    final char[] chars;
+    final short[] styles;
+    // Text of CLUSTER cells: characters outside the BMP and characters with combining marks.
+    // Allocated on first use; entries of cells without the flag are stale.
+    String[] clusters;
+    // Set when the line's content continues on the next line.
+    boolean wrapped;
+    // Buffer sequence number of the last modification, used to tell changed lines apart.
+    long version;
+
+    Line(int width) {
+        this.chars = new char[width];
+        this.styles = new short[width];
+        Arrays.fill(chars, ' ');
+    }
+
+    int width() {
+        return chars.length;
+    }
+
+    void set(int col, char ch, short style) {
+        chars[col] = ch;
+        styles[col] = style;
+    }
+
+    void setCluster(int col, String text, short style) {
+        if (clusters == null) clusters = new String[chars.length];
+        clusters[col] = text;
+        chars[col] = text.charAt(0);
+        styles[col] = (short) (style | CLUSTER);
+    }
+
+    void fill(int from, int to, char ch, short style) {
+        Arrays.fill(chars, from, to, ch);
+        Arrays.fill(styles, from, to, style);
+    }
+
+    // Blanks the other half of any wide character that overwriting cells [from, to) would split.
+    void breakWide(int from, int to) {
+        if (from > 0 && from < chars.length && (styles[from] & WIDE_TAIL) != 0) blank(from - 1);
+        if (to < chars.length && (styles[to] & WIDE_TAIL) != 0) blank(to);
+    }
+
+    private void blank(int col) {
+        chars[col] = ' ';
+        styles[col] &= Attributes.CODE_MASK;
+    }
+
+    // Shifts cells [col, width - n) right by n. The n cells pushed past the right margin are copied
+    // into the spill arrays unless those are null. Wide characters split by the shift, at `col` or
+    // at the margin, are blanked.
+    void shiftRight(int col, int n, char[] spillChars, short[] spillStyles, String[] spillClusters) {
+        int width = chars.length;
+        breakWide(col, col);
+        boolean splitAtMargin = (styles[width - n] & WIDE_TAIL) != 0;
+        if (spillChars != null) {
+            System.arraycopy(chars, width - n, spillChars, 0, n);
+            System.arraycopy(styles, width - n, spillStyles, 0, n);
+            if (clusters != null) {
+                System.arraycopy(clusters, width - n, spillClusters, 0, n);
+            }
+            if (splitAtMargin) {
+                spillChars[0] = ' ';
+                spillStyles[0] &= Attributes.CODE_MASK;
+            }
+        }
+        System.arraycopy(chars, col, chars, col + n, width - col - n);
+        System.arraycopy(styles, col, styles, col + n, width - col - n);
+        if (clusters != null) {
+            System.arraycopy(clusters, col, clusters, col + n, width - col - n);
+        }
+        if (splitAtMargin) blank(width - 1);
+    }
+
+    // Copies n cells from the arrays to the start of the line. Cluster texts come from `clusters`.
+    void putCells(char[] chars, short[] styles, String[] clusters, int n) {
+        System.arraycopy(chars, 0, this.chars, 0, n);
+        System.arraycopy(styles, 0, this.styles, 0, n);
+        for (int i = 0; i < n; i++) {
+            if ((styles[i] & CLUSTER) != 0) setCluster(i, clusters[i], styles[i]);
+        }
+    }
+
+    // Text of the cell: "" for the second cell of a wide character.
+    String textAt(int col) {
+        short style = styles[col];
+        if ((style & WIDE_TAIL) != 0) return "";
+        if ((style & CLUSTER) != 0) return clusters[col];
+        return String.valueOf(chars[col]);
+    }
+
+    // Whether no cell among the first `length` has a flag, so the chars are the text.
+    static boolean isPlain(short[] styles, int length) {
+        for (int i = 0; i < length; i++) {
+            if ((styles[i] & CELL_FLAGS) != 0) return false;
+        }
+        return true;
+    }
+
+    String text() {
+        if (isPlain(styles, chars.length)) return new String(chars);
+        StringBuilder sb = new StringBuilder(chars.length);
+        appendText(sb, chars, styles, clusters, chars.length);
+        return sb.toString();
+    }
+
+    // Appends the text of the first `length` cells: wide characters once, clusters in full.
+    static void appendText(StringBuilder sb, char[] chars, short[] styles, String[] clusters, int length) {
+        if (isPlain(styles, length)) {
+            sb.append(chars, 0, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            short style = styles[i];
+            if ((style & WIDE_TAIL) != 0) continue;
+            if ((style & CLUSTER) != 0) sb.append(clusters[i]);
+            else sb.append(chars[i]);
+        }
+    }
+
+    boolean isBlank() {
+        return isBlank(chars, styles, chars.length);
+    }
+
+    static boolean isBlank(char[] chars, short[] styles, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != ' ' || styles[i] != Attributes.DEFAULT_CODE) return false;
+        }
+        return true;
+    }
+
+    void clear() {
+        fill(0, chars.length, ' ', Attributes.DEFAULT_CODE);
+        clusters = null;
+        wrapped = false;
+    }
+}
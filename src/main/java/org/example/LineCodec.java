@@ -0,0 +1,237 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Compact binary form of a line: trailing default blanks are trimmed, chars are stored as one byte
+// each when they all fit in Latin-1, and styles are stored as runs of (start column, style code).
+//
+//   byte  flags        WRAPPED, LATIN1, COMPLEX, CLUSTERS
+//   short width        width of the line when it was encoded
+//   short length       number of stored chars
+//   short runCount
+//   length chars       1 or 2 bytes each
+//   runCount runs      short start, short style
+//   short clusterCount                             only with CLUSTERS
+//   clusterCount       short column, short length, UTF-16 chars
+final class LineCodec {
+    static final int WRAPPED = 1;
+    static final int LATIN1 = 2;
+    // Some style carries a Line cell flag, so the chars alone are not the line's text.
+    static final int COMPLEX = 4;
+    static final int CLUSTERS = 8;
+    static final int HEADER_BYTES = 7;
+
+    private LineCodec() {
+    }
+
+    static int trimmedLength(Line line) {
+        int length = line.width();
+        while (length > 0 && line.chars[length - 1] == ' ' && line.styles[length - 1] == Attributes.DEFAULT_CODE) {
+            length--;
+        }
+        return length;
+    }
+
+    // Size of the cluster section, 0 when the first `length` cells have no cluster.
+    private static int clusterBytes(Line line, int length) {
+        if (line.clusters == null) return 0;
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            if ((line.styles[i] & Line.CLUSTER) != 0) bytes += 4 + 2 * line.clusters[i].length();
+        }
+        return bytes == 0 ? 0 : 2 + bytes;
+    }
+
+    private static int flags(Line line, boolean latin1, boolean complex, boolean clusters) {
+        return (line.wrapped ? WRAPPED : 0) | (latin1 ? LATIN1 : 0) | (complex ? COMPLEX : 0) | (clusters ? CLUSTERS : 0);
+    }
+
+    // Encodes the line into a new array of exactly the record's size, in one pass per section.
+    static byte[] freeze(Line line) {
+        char[] chars = line.chars;
+        short[] styles = line.styles;
+        int length = trimmedLength(line);
+
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits |= chars[i];
+        }
+        boolean latin1 = bits <= 0xFF;
+        // Every cell of a run has the style of its first, so the runs show any cell flags.
+        int runs = 0;
+        int styleBits = 0;
+        for (int i = 0; i < length; i = nextRun(styles, i, length)) {
+            runs++;
+            styleBits |= styles[i];
+        }
+
+        int clusterBytes = clusterBytes(line, length);
+
+        byte[] record = new byte[HEADER_BYTES + (latin1 ? length : 2 * length) + 4 * runs + clusterBytes];
+        record[0] = (byte) flags(line, latin1, (styleBits & Line.CELL_FLAGS) != 0, clusterBytes > 0);
+        putShort(record, 1, line.width());
+        putShort(record, 3, length);
+        putShort(record, 5, runs);
+
+        int pos = HEADER_BYTES;
+        if (latin1) {
+            for (int i = 0; i < length; i++) record[pos++] = (byte) chars[i];
+        } else {
+            for (int i = 0; i < length; i++, pos += 2) putShort(record, pos, chars[i]);
+        }
+        for (int i = 0; i < length; i = nextRun(styles, i, length)) {
+            putShort(record, pos, i);
+            putShort(record, pos + 2, styles[i]);
+            pos += 4;
+        }
+        if (clusterBytes > 0) {
+            int countAt = pos;
+            int count = 0;
+            pos += 2;
+            for (int i = 0; i < length; i++) {
+                if ((styles[i] & Line.CLUSTER) == 0) continue;
+                String text = line.clusters[i];
+                putShort(record, pos, i);
+                putShort(record, pos + 2, text.length());
+                pos += 4;
+                for (int k = 0; k < text.length(); k++, pos += 2) putShort(record, pos, text.charAt(k));
+                count++;
+            }
+            putShort(record, countAt, count);
+        }
+        return record;
+    }
+
+    // Start of the style run after the one starting at `from`, or `length`.
+    private static int nextRun(short[] styles, int from, int length) {
+        int mismatch = Arrays.mismatch(styles, from, length - 1, styles, from + 1, length);
+        return mismatch < 0 ? length : from + mismatch + 1;
+    }
+
+    private static void putShort(byte[] out, int at, int value) {
+        out[at] = (byte) (value >>> 8);
+        out[at + 1] = (byte) value;
+    }
+
+    static char charAt(ByteBuffer in, int at, int col) {
+        int stored = in.getShort(at + 3) & 0xFFFF;
+        if (col >= stored) return ' ';
+        int pos = at + HEADER_BYTES;
+        return (in.get(at) & LATIN1) != 0 ? (char) (in.get(pos + col) & 0xFF) : in.getChar(pos + 2 * col);
+    }
+
+    static short styleAt(ByteBuffer in, int at, int col) {
+        int stored = in.getShort(at + 3) & 0xFFFF;
+        if (col >= stored) return Attributes.DEFAULT_CODE;
+        int runs = in.getShort(at + 5) & 0xFFFF;
+        int pos = at + HEADER_BYTES + ((in.get(at) & LATIN1) != 0 ? stored : 2 * stored);
+
+        // Last run starting at or before col; the first run always starts at 0.
+        int lo = 0;
+        int hi = runs - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if ((in.getShort(pos + 4 * mid) & 0xFFFF) <= col) lo = mid;
+            else hi = mid - 1;
+        }
+        return in.getShort(pos + 4 * lo + 2);
+    }
+
+    // Decodes only the chars of the record at `at` into `chars`, padding them with blanks.
+    static void decodeChars(ByteBuffer in, int at, char[] chars) {
+        decodeChars(in, at, chars, 0, chars.length);
+    }
+
+    // Decodes the first `width` chars of the record at `at` into `chars` at `offset`.
+    static void decodeChars(ByteBuffer in, int at, char[] chars, int offset, int width) {
+        int length = Math.min(in.getShort(at + 3) & 0xFFFF, width);
+        int pos = at + HEADER_BYTES;
+        if ((in.get(at) & LATIN1) != 0) {
+            for (int i = 0; i < length; i++) chars[offset + i] = (char) (in.get(pos + i) & 0xFF);
+        } else {
+            for (int i = 0; i < length; i++) chars[offset + i] = in.getChar(pos + 2 * i);
+        }
+        Arrays.fill(chars, offset + length, offset + width, ' ');
+    }
+
+    // Decodes the record at absolute position `at` into `line`, padding it with default blanks.
+    // Does not change the buffer's position, so concurrent readers can share it.
+    static void decode(ByteBuffer in, int at, Line line) {
+        decode(in, at, line.chars, line.styles, 0, line.width());
+        line.wrapped = (in.get(at) & WRAPPED) != 0;
+        line.clusters = null;
+        if ((in.get(at) & CLUSTERS) != 0) {
+            line.clusters = new String[line.width()];
+            decodeClusters(in, at, line.clusters, 0, line.width());
+        }
+    }
+
+    // Puts the texts of the record's cluster cells among the first `width` into `clusters` at
+    // `offset`. The cells' chars and flags come from decode().
+    static void decodeClusters(ByteBuffer in, int at, String[] clusters, int offset, int width) {
+        int flags = in.get(at);
+        if ((flags & CLUSTERS) == 0) return;
+        int stored = in.getShort(at + 3) & 0xFFFF;
+        int runs = in.getShort(at + 5) & 0xFFFF;
+        int pos = at + HEADER_BYTES + ((flags & LATIN1) != 0 ? stored : 2 * stored) + 4 * runs;
+        int count = in.getShort(pos) & 0xFFFF;
+        pos += 2;
+        for (int c = 0; c < count; c++) {
+            int col = in.getShort(pos) & 0xFFFF;
+            int length = in.getShort(pos + 2) & 0xFFFF;
+            pos += 4;
+            if (col < width) {
+                char[] text = new char[length];
+                for (int k = 0; k < length; k++) text[k] = in.getChar(pos + 2 * k);
+                clusters[offset + col] = new String(text);
+            }
+            pos += 2 * length;
+        }
+    }
+
+    // Decodes the first `width` cells of the record into chars/styles at `offset`, padding with
+    // default blanks past the stored length.
+    static void decode(ByteBuffer in, int at, char[] chars, short[] styles, int offset, int width) {
+        int flags = in.get(at);
+        int stored = in.getShort(at + 3) & 0xFFFF;
+        int runs = in.getShort(at + 5) & 0xFFFF;
+        int length = Math.min(stored, width);
+        boolean latin1 = (flags & LATIN1) != 0;
+
+        int pos = at + HEADER_BYTES;
+        if (latin1) {
+            for (int i = 0; i < length; i++) chars[offset + i] = (char) (in.get(pos + i) & 0xFF);
+            pos += stored;
+        } else {
+            for (int i = 0; i < length; i++) chars[offset + i] = in.getChar(pos + 2 * i);
+            pos += 2 * stored;
+        }
+        Arrays.fill(chars, offset + length, offset + width, ' ');
+
+        for (int r = 0; r < runs; r++) {
+            int start = in.getShort(pos + 4 * r) & 0xFFFF;
+            int end = r + 1 < runs ? in.getShort(pos + 4 * (r + 1)) & 0xFFFF : length;
+            if (start >= length) break;
+            Arrays.fill(styles, offset + start, offset + Math.min(end, length), in.getShort(pos + 4 * r + 2));
+        }
+        Arrays.fill(styles, offset + length, offset + width, Attributes.DEFAULT_CODE);
+    }
+
+    static boolean isComplex(byte[] record) {
+        return (record[0] & COMPLEX) != 0;
+    }
+
+    static boolean isWrapped(byte[] record) {
+        return (record[0] & WRAPPED) != 0;
+    }
+
+    // Width of the line the record was frozen from.
+    static int width(byte[] record) {
+        return (record[1] & 0xFF) << 8 | record[2] & 0xFF;
+    }
+
+    static int storedLength(byte[] record) {
+        return (record[3] & 0xFF) << 8 | record[4] & 0xFF;
+    }
+}
@@ -0,0 +1,40 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Blank lines returned by buffers that cleared or hibernated their screens, kept for other buffers
+// of the same width. Shared by all the sessions of a SessionManager, so access is synchronized;
+// buffers only take a line when a row is first written and give lines back in bulk.
+final class LinePool {
+    private final int maxLines;
+    private final Map<Integer, ArrayDeque<Line>> free = new HashMap<>();
+    private int size = 0;
+
+    LinePool(int maxLines) {
+        this.maxLines = maxLines;
+    }
+
+    synchronized Line take(int width) {
+        ArrayDeque<Line> lines = free.get(width);
+        Line line = lines == null ? null : lines.poll();
+        if (line == null) return new Line(width);
+        size--;
+        return line;
+    }
+
+    // Clears the line and keeps it, unless the pool is full.
+    void give(Line line) {
+        line.clear();
+        synchronized (this) {
+            if (size == maxLines) return;
+            free.computeIfAbsent(line.width(), w -> new ArrayDeque<>()).push(line);
+            size++;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
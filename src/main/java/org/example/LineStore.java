@@ -0,0 +1,135 @@
+package org.example;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Circular store of lines, top first: the screen rows, preceded during a write batch by the rows
+// that have scrolled off but are not frozen yet. Grows by doubling when a line is appended to a
+// full store.
+//
+// Rows are allocated lazily. A row that has not been written since it was added or released holds
+// null and reads as a blank line shared by all stores of the same width; edit() gives it its own
+// line, from the pool if there is one.
+final class LineStore {
+    private static final ConcurrentHashMap<Integer, Line> BLANKS = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final LinePool pool;
+    // Never modified: readers may see it in any store of this width.
+    private final Line blank;
+
+    private Line[] lines;
+    private int head = 0;
+    private int size = 0;
+
+    LineStore(int width, int initialCapacity) {
+        this(width, initialCapacity, null);
+    }
+
+    LineStore(int width, int initialCapacity, LinePool pool) {
+        this.width = width;
+        this.pool = pool;
+        this.blank = BLANKS.computeIfAbsent(width, Line::new);
+        this.lines = new Line[Math.max(1, initialCapacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return slot >= lines.length ? slot - lines.length : slot;
+    }
+
+    // The line for reading; a row that was never written is the shared blank line.
+    Line get(int index) {
+        Line line = lines[slot(index)];
+        return line == null ? blank : line;
+    }
+
+    // The line for writing, allocated first if the row is still blank.
+    Line edit(int index) {
+        int slot = slot(index);
+        Line line = lines[slot];
+        if (line == null) {
+            line = pool == null ? new Line(width) : pool.take(width);
+            lines[slot] = line;
+        }
+        return line;
+    }
+
+    void set(int index, Line line) {
+        lines[slot(index)] = line == blank ? null : line;
+    }
+
+    // Records a change to the row. Blank rows have nothing to stamp.
+    void stamp(int index, long version) {
+        Line line = lines[slot(index)];
+        if (line != null) line.version = version;
+    }
+
+    // Makes the row blank. With a pool, its line goes back there; without one it is cleared in place.
+    void release(int index) {
+        int slot = slot(index);
+        Line line = lines[slot];
+        if (line == null) return;
+        if (pool != null) {
+            lines[slot] = null;
+            pool.give(line);
+        } else {
+            line.clear();
+        }
+    }
+
+    // Gives every line the store holds, including stale slots, back to the pool.
+    void releaseAll() {
+        for (int slot = 0; slot < lines.length; slot++) {
+            Line line = lines[slot];
+            if (line != null) {
+                lines[slot] = null;
+                if (pool != null) pool.give(line);
+            }
+        }
+    }
+
+    // Appends a blank line, reusing one removed earlier if its slot still holds it.
+    void append() {
+        if (size == lines.length) {
+            grow();
+        }
+        Line line = lines[slot(size)];
+        if (line != null) {
+            line.clear();
+        }
+        size++;
+    }
+
+    // Moves the top line to the bottom as a blank line, reusing its arrays. Its old slot is emptied
+    // so that append() cannot later reuse a line that is still in the store.
+    void rotate() {
+        Line recycled = lines[head];
+        if (recycled != null) {
+            recycled.clear();
+        }
+        lines[head] = null;
+        head++;
+        if (head == lines.length) head = 0;
+        lines[slot(size - 1)] = recycled;
+    }
+
+    // Removes the n top lines. Their slots keep them for append() to reuse.
+    void removeFirst(int n) {
+        head += n;
+        if (head >= lines.length) head -= lines.length;
+        size -= n;
+    }
+
+    private void grow() {
+        Line[] grown = new Line[2 * lines.length];
+        for (int i = 0; i < size; i++) {
+            grown[i] = lines[slot(i)];
+        }
+        lines = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,168 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Disk tier for old scrollback lines. Frozen LineCodec records are appended to memory-mapped segment
+// files; each segment starts with a table of record offsets, so the heap only holds one small object
+// per segment however many lines are stored. Segments whose lines have all been evicted are deleted.
+public final class MappedScrollback implements Closeable {
+    private static final int SEGMENT_BYTES = 8 << 20;
+    private static final int SEGMENT_LINES = 16384;
+    private static final int TABLE_BYTES = 4 * SEGMENT_LINES;
+
+    private static final class Segment {
+        final long firstLine;
+        final Path file;
+        final MappedByteBuffer buffer;
+        int lineCount;
+        int dataEnd = TABLE_BYTES;
+
+        Segment(long firstLine, Path file, MappedByteBuffer buffer) {
+            this.firstLine = firstLine;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private long firstLine = 0;
+    private long endLine = 0;
+    private int nextSegmentId = 0;
+
+    // Creates a private subdirectory of `parent` for the segment files; close() deletes it.
+    public MappedScrollback(Path parent) throws IOException {
+        this.directory = Files.createTempDirectory(parent, "scrollback");
+    }
+
+    long size() {
+        return endLine - firstLine;
+    }
+
+    void append(byte[] record) {
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.lineCount == SEGMENT_LINES || tail.dataEnd + record.length > SEGMENT_BYTES) {
+            tail = newSegment();
+        }
+        tail.buffer.putInt(4 * tail.lineCount, tail.dataEnd);
+        tail.buffer.put(tail.dataEnd, record);
+        tail.dataEnd += record.length;
+        tail.lineCount++;
+        endLine++;
+    }
+
+    // Decodes line `index`, counted from the oldest retained line, into `into`.
+    void read(long index, Line into) {
+        read(segments, firstLine + index, into);
+    }
+
+    // Stable view of the lines stored now. Records are never overwritten, and a mapping stays
+    // readable after its file is deleted, so the view is unaffected by later appends and evictions.
+    View view() {
+        return new View(new ArrayList<>(segments), firstLine, endLine);
+    }
+
+    static final class View {
+        private final List<Segment> segments;
+        private final long firstLine;
+        private final long endLine;
+
+        private View(List<Segment> segments, long firstLine, long endLine) {
+            this.segments = segments;
+            this.firstLine = firstLine;
+            this.endLine = endLine;
+        }
+
+        long size() {
+            return endLine - firstLine;
+        }
+
+        void read(long index, Line into) {
+            MappedScrollback.read(segments, firstLine + index, into);
+        }
+    }
+
+    // Record of line `index` as it is stored, without decoding it.
+    ByteBuffer record(long index) {
+        long absolute = firstLine + index;
+        Segment segment = segmentOf(segments, absolute);
+        int i = (int) (absolute - segment.firstLine);
+        int start = segment.buffer.getInt(4 * i);
+        int end = i + 1 < segment.lineCount ? segment.buffer.getInt(4 * (i + 1)) : segment.dataEnd;
+        return segment.buffer.slice(start, end - start);
+    }
+
+    private static void read(List<Segment> segments, long absolute, Line into) {
+        Segment segment = segmentOf(segments, absolute);
+        int offset = segment.buffer.getInt(4 * (int) (absolute - segment.firstLine));
+        LineCodec.decode(segment.buffer, offset, into);
+    }
+
+    void dropOldest(long count) {
+        firstLine = Math.min(endLine, firstLine + count);
+        while (!segments.isEmpty()) {
+            Segment head = segments.get(0);
+            if (head.firstLine + head.lineCount > firstLine) {
+                break;
+            }
+            segments.remove(0);
+            delete(head.file);
+        }
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            delete(segment.file);
+        }
+        segments.clear();
+        firstLine = endLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear();
+        Files.deleteIfExists(directory);
+    }
+
+    private static Segment segmentOf(List<Segment> segments, long absolute) {
+        int lo = 0;
+        int hi = segments.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segments.get(mid).firstLine <= absolute) lo = mid;
+            else hi = mid - 1;
+        }
+        return segments.get(lo);
+    }
+
+    private Segment newSegment() {
+        Path file = directory.resolve("segment-" + nextSegmentId++);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(endLine, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES));
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The mapping stays valid until the buffer is collected, so readers holding it are unaffected.
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example;
+
+import java.io.Closeable;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Feeds the output of many ptys into their TerminalBuffers. Each attached pty gets a reader that
+// blocks on the pty and puts what it reads into a small bounded queue (see PtyStream); a fixed
+// pool of workers decodes queued chunks into the buffers and renders them. Readers run on virtual
+// threads when the JVM has them (Java 21 and later) and otherwise on platform threads with small
+// stacks, so one JVM can host thousands of sessions either way.
+public final class PtyPipeline implements Closeable {
+    // How renders keep up with a buffer that changes faster than the renderer draws it.
+    public enum RenderPolicy {
+        // Render after every group of chunks, on the worker. A slow renderer slows the consumer,
+        // which fills the queue and throttles the reader.
+        EVERY_UPDATE,
+        // Render on another worker, coalescing the updates that arrive while a render is running
+        // into one render of the latest screen. Input is never held back by rendering.
+        LATEST
+    }
+
+    private static final int DEFAULT_QUEUE_CHUNKS = 8;
+    private static final int DEFAULT_CHUNK_BYTES = 4096;
+    private static final long READER_STACK_BYTES = 256 << 10;
+
+    final ExecutorService readers;
+    final ExecutorService workers;
+    final int queueChunks;
+    final int chunkBytes;
+    private final boolean virtualThreads;
+    private final Set<PtyStream> streams = ConcurrentHashMap.newKeySet();
+
+    public PtyPipeline() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CHUNKS, DEFAULT_CHUNK_BYTES);
+    }
+
+    // `workers` threads apply and render the chunks of all streams. Each stream queues at most
+    // `queueChunks` reads of up to `chunkBytes` bytes before its reader has to wait.
+    public PtyPipeline(int workers, int queueChunks, int chunkBytes) {
+        if (workers < 1 || queueChunks < 1 || chunkBytes < 4) {
+            throw new IllegalArgumentException("workers, queueChunks and chunkBytes must be positive, chunkBytes at least 4");
+        }
+        this.queueChunks = queueChunks;
+        this.chunkBytes = chunkBytes;
+        this.workers = Executors.newFixedThreadPool(workers, daemonThreads("pty-worker-", 0));
+        ExecutorService virtual = virtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.readers = virtual != null ? virtual : Executors.newCachedThreadPool(daemonThreads("pty-reader-", READER_STACK_BYTES));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() where it exists and is enabled; the build targets
+    // Java 17, so it is looked up at run time.
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix, long stackSize) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(null, task, prefix + count.incrementAndGet(), stackSize);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // Starts reading `pty` straight into `buffer`, without rendering.
+    public PtyStream attach(ReadableByteChannel pty, TerminalBuffer buffer) {
+        return attach(pty, buffer, buffer, null, RenderPolicy.LATEST);
+    }
+
+    // Starts reading `pty` and decoding it into `sink`, usually an AnsiParser over `buffer`.
+    // `renderer`, if not null, is given a snapshot of `buffer` after updates, as `policy` says.
+    // While the stream is open the pipeline is the buffer's writer thread.
+    public PtyStream attach(ReadableByteChannel pty, TerminalBuffer buffer, CharSink sink,
+                            Consumer<ScreenSnapshot> renderer, RenderPolicy policy) {
+        PtyStream stream = new PtyStream(this, pty, buffer, sink, renderer, policy);
+        streams.add(stream);
+        readers.execute(stream::read);
+        return stream;
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    void remove(PtyStream stream) {
+        streams.remove(stream);
+    }
+
+    // Closes every stream, and with them their ptys, then stops the threads.
+    @Override
+    public void close() {
+        for (PtyStream stream : streams) {
+            stream.close();
+        }
+        readers.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,340 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// One pty attached to a PtyPipeline. The reader thread reads the pty into chunks and queues them;
+// a read that fits in the space left in the newest queued chunk is copied into it, so a pty that
+// writes in dribs is applied in few large pieces. When all `queueChunks` chunks are queued the
+// reader waits for the consumer, which stops reading the pty and lets the kernel throttle the
+// program behind it. The consumer is a task on the pipeline's workers that decodes queued chunks
+// into the buffer; at most one runs per stream, and it gives up its worker after DRAIN_CHUNKS
+// chunks so that busy streams take turns.
+public final class PtyStream implements Closeable {
+    private static final int DRAIN_CHUNKS = 4;
+
+    private static final class Chunk {
+        final ByteBuffer data;
+        // When the first byte in the chunk was read.
+        long readNanos;
+
+        Chunk(int capacity) {
+            data = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    private final PtyPipeline pipeline;
+    private final ReadableByteChannel pty;
+    private final TerminalBuffer buffer;
+    private final ByteIngest ingest;
+    private final Consumer<ScreenSnapshot> renderer;
+    private final PtyPipeline.RenderPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition ended = lock.newCondition();
+    private final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+    private final ArrayDeque<Chunk> free = new ArrayDeque<>();
+    private boolean draining;
+    private boolean endOfInput;
+    private boolean finished;
+    private boolean closed;
+    private volatile Exception failure;
+
+    // Render requests since the current render started; see requestRender().
+    private final AtomicInteger renderRequests = new AtomicInteger();
+    private ScreenSnapshot rendered;
+
+    // Latency from reading a byte to its chunk being applied, written by the drain task.
+    private final Histogram latencyNanos = new Histogram();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    PtyStream(PtyPipeline pipeline, ReadableByteChannel pty, TerminalBuffer buffer, CharSink sink,
+              Consumer<ScreenSnapshot> renderer, PtyPipeline.RenderPolicy policy) {
+        this.pipeline = pipeline;
+        this.pty = pty;
+        this.buffer = buffer;
+        this.ingest = new ByteIngest(sink, pipeline.chunkBytes);
+        this.renderer = renderer;
+        this.policy = policy;
+    }
+
+    public TerminalBuffer getBuffer() {
+        return buffer;
+    }
+
+    // Runs on the reader thread until the pty ends or the stream is closed.
+    void read() {
+        Chunk chunk = null;
+        try {
+            while (true) {
+                if (chunk == null) chunk = takeFree();
+                if (chunk == null) return;
+                int n = pty.read(chunk.data);
+                if (n < 0) break;
+                if (n == 0) continue;
+                Counters.add(bytesRead, n);
+                chunk.readNanos = System.nanoTime();
+                chunk = offer(chunk);
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                if (closed) return;
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+        }
+        lock.lock();
+        try {
+            if (closed) return;
+            endOfInput = true;
+            scheduleDrain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Chunk takeFree() {
+        lock.lock();
+        try {
+            if (closed) return null;
+            Chunk chunk = free.poll();
+            return chunk != null ? chunk : new Chunk(pipeline.chunkBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues the bytes read into `chunk`, waiting while the queue is full. Returns the chunk to read
+    // into next: `chunk` again if its bytes were copied into the queued tail, otherwise null.
+    // Queued chunks stay in write mode until the drain flips them.
+    private Chunk offer(Chunk chunk) {
+        lock.lock();
+        try {
+            while (!closed) {
+                Chunk tail = queue.peekLast();
+                if (tail != null && tail.data.remaining() >= chunk.data.position()) {
+                    tail.data.put(chunk.data.flip());
+                    chunk.data.clear();
+                    Counters.add(coalesced, 1);
+                    return chunk;
+                }
+                if (queue.size() < pipeline.queueChunks) {
+                    queue.add(chunk);
+                    scheduleDrain();
+                    return null;
+                }
+                Counters.add(throttled, 1);
+                notFull.awaitUninterruptibly();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held.
+    private void scheduleDrain() {
+        if (!draining) {
+            draining = true;
+            pipeline.workers.execute(this::drain);
+        }
+    }
+
+    // Applies up to DRAIN_CHUNKS queued chunks, then renders and hands the worker on. An exception
+    // from the sink or the renderer ends the stream, since the buffer may be left half updated.
+    private void drain() {
+        try {
+            drainChunks();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void drainChunks() {
+        boolean applied = false;
+        boolean more;
+        int count = 0;
+        Chunk chunk = null;
+        while (true) {
+            lock.lock();
+            try {
+                if (chunk != null) {
+                    chunk.data.clear();
+                    free.push(chunk);
+                }
+                chunk = null;
+                if (!closed && !queue.isEmpty() && count < DRAIN_CHUNKS) {
+                    chunk = queue.poll();
+                    // There is room in the queue again.
+                    notFull.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (chunk == null) break;
+            chunk.data.flip();
+            ingest.feed(chunk.data);
+            latencyNanos.record(System.nanoTime() - chunk.readNanos);
+            Counters.add(updates, 1);
+            count++;
+            applied = true;
+        }
+        lock.lock();
+        try {
+            if (queue.isEmpty() && endOfInput && !finished && !closed) {
+                ingest.finish();
+                finished = true;
+                applied = true;
+                ended.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (applied && renderer != null) {
+            if (policy == PtyPipeline.RenderPolicy.EVERY_UPDATE) {
+                render();
+            } else {
+                requestRender();
+            }
+        }
+        lock.lock();
+        try {
+            // End of input that arrived while this drain ran found it scheduled and left it to us.
+            more = !closed && (!queue.isEmpty() || endOfInput && !finished);
+            draining = more;
+            if (finished || closed) pipeline.remove(this);
+        } finally {
+            lock.unlock();
+        }
+        if (more) pipeline.workers.execute(this::drain);
+    }
+
+    // Drop-to-latest: the first request starts a render task; requests made while it renders only
+    // count, and when it is done it renders once more if there were any, showing the latest screen.
+    private void requestRender() {
+        if (renderRequests.getAndIncrement() == 0) {
+            pipeline.workers.execute(this::renderLatest);
+        }
+    }
+
+    private void renderLatest() {
+        int seen;
+        try {
+            do {
+                seen = renderRequests.get();
+                render();
+            } while (!renderRequests.compareAndSet(seen, 0));
+        } catch (RuntimeException e) {
+            renderRequests.set(0);
+            fail(e);
+        }
+    }
+
+    // Keeps the exception for getFailure() and closes the stream.
+    private void fail(RuntimeException e) {
+        lock.lock();
+        try {
+            if (closed) return;
+            failure = e;
+        } finally {
+            lock.unlock();
+        }
+        close();
+    }
+
+    private void render() {
+        rendered = buffer.snapshot(rendered);
+        renderer.accept(rendered);
+        Counters.add(renders, 1);
+    }
+
+    // Waits until the pty has ended and everything read from it is in the buffer. Returns false if
+    // that did not happen within the timeout or the stream was closed first.
+    public boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!finished && !closed) {
+                if (nanos <= 0) return false;
+                nanos = ended.awaitNanos(nanos);
+            }
+            return finished;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The error that ended the stream, or null: an IOException from reading the pty, after which
+    // what was read is still applied, or an exception from the sink or the renderer, which closed
+    // the stream.
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    // Reads copied into an already queued chunk instead of taking a place in the queue.
+    public long getCoalescedReads() {
+        return coalesced.get();
+    }
+
+    // Times the reader found the queue full and had to wait for the consumer.
+    public long getThrottleCount() {
+        return throttled.get();
+    }
+
+    // Chunks applied to the buffer.
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getRenderCount() {
+        return renders.get();
+    }
+
+    // Nanoseconds from reading each chunk's first byte to the chunk being in the buffer.
+    public Histogram getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    // Stops reading, closes the pty and drops what is still queued. A render already running
+    // finishes.
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            queue.clear();
+            free.clear();
+            notFull.signalAll();
+            ended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            pty.close();
+        } catch (IOException ignored) {
+            // Nothing more will be read from it either way.
+        }
+        pipeline.remove(this);
+    }
+}
@@ -0,0 +1,115 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Joins rows into one logical line, following their wrapped flags, and splits it again at a new
+// width. A wrapped row contributes all of its cells; the last row only up to its trailing blanks.
+// A wide character that would be split between two rows moves down whole.
+final class Reflow {
+    private final int width;
+    private char[] chars = new char[256];
+    private short[] styles = new short[256];
+    private String[] clusters = new String[256];
+    private int length = 0;
+    private int cursorOffset = -1;
+    // Offsets at which the rows at the new width start, valid while `rows` >= 0.
+    private int[] starts = new int[16];
+    private int rows = -1;
+
+    Reflow(int width) {
+        this.width = width;
+    }
+
+    void clear() {
+        length = 0;
+        cursorOffset = -1;
+        rows = -1;
+    }
+
+    void append(Line row) {
+        int n = row.wrapped ? row.width() : LineCodec.trimmedLength(row);
+        ensureCapacity(length + n);
+        System.arraycopy(row.chars, 0, chars, length, n);
+        System.arraycopy(row.styles, 0, styles, length, n);
+        if (row.clusters != null) {
+            System.arraycopy(row.clusters, 0, clusters, length, n);
+        }
+        length += n;
+        rows = -1;
+    }
+
+    void append(byte[] record) {
+        int n = LineCodec.isWrapped(record) ? LineCodec.width(record) : LineCodec.storedLength(record);
+        ensureCapacity(length + n);
+        ByteBuffer in = ByteBuffer.wrap(record);
+        LineCodec.decode(in, 0, chars, styles, length, n);
+        LineCodec.decodeClusters(in, 0, clusters, length, n);
+        length += n;
+        rows = -1;
+    }
+
+    // Records that the cursor is at column `col` of the row appended next.
+    void markCursor(int col) {
+        cursorOffset = length + col;
+        rows = -1;
+    }
+
+    boolean hasCursor() {
+        return cursorOffset >= 0;
+    }
+
+    int cursorRow() {
+        split();
+        int row = rows - 1;
+        while (starts[row] > cursorOffset) row--;
+        return row;
+    }
+
+    int cursorCol() {
+        return cursorOffset - starts[cursorRow()];
+    }
+
+    int rowCount() {
+        split();
+        return rows;
+    }
+
+    Line row(int index) {
+        split();
+        Line line = new Line(width);
+        int from = starts[index];
+        int to = index + 1 < rows ? starts[index + 1] : from + width;
+        int n = Math.max(0, Math.min(to, length) - from);
+        System.arraycopy(chars, from, line.chars, 0, n);
+        System.arraycopy(styles, from, line.styles, 0, n);
+        for (int i = 0; i < n; i++) {
+            if ((line.styles[i] & Line.CLUSTER) != 0) line.setCluster(i, clusters[from + i], line.styles[i]);
+        }
+        line.wrapped = index < rows - 1;
+        return line;
+    }
+
+    private void split() {
+        if (rows >= 0) return;
+        int cells = Math.max(length, cursorOffset + 1);
+        rows = 0;
+        int start = 0;
+        do {
+            if (rows == starts.length) starts = Arrays.copyOf(starts, 2 * rows);
+            starts[rows++] = start;
+            int next = start + width;
+            if (next < length && (styles[next] & Line.WIDE_TAIL) != 0 && next - 1 > start) next--;
+            start = next;
+        } while (start < cells);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            int newLength = Math.max(capacity, 2 * chars.length);
+            chars = Arrays.copyOf(chars, newLength);
+            styles = Arrays.copyOf(styles, newLength);
+            clusters = Arrays.copyOf(clusters, newLength);
+        }
+    }
+}
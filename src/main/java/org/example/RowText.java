@@ -0,0 +1,57 @@
+package org.example;
+
+import java.util.Arrays;
+
+// Text of a row for searching, with the map between text indices and cells. A plain row's chars
+// are its text, one per cell. A row with wide characters or clusters is rendered into a new array,
+// where a cell may take no chars or several.
+final class RowText {
+    char[] chars;
+    private int[] cols = new int[0];
+    private int length;
+    private boolean plain;
+
+    void setPlain(char[] cells) {
+        chars = cells;
+        plain = true;
+    }
+
+    void set(Line line) {
+        int width = line.width();
+        if (Line.isPlain(line.styles, width)) {
+            setPlain(line.chars);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(width + 8);
+        if (cols.length < 2 * width + 1) cols = new int[2 * width + 1];
+        for (int col = 0; col < width; col++) {
+            String text = line.textAt(col);
+            int needed = sb.length() + text.length() + 1;
+            if (cols.length < needed) cols = Arrays.copyOf(cols, Math.max(needed, 2 * cols.length));
+            for (int k = 0; k < text.length(); k++) {
+                cols[sb.length() + k] = col;
+            }
+            sb.append(text);
+        }
+        length = sb.length();
+        cols[length] = width;
+        chars = new char[length];
+        sb.getChars(0, length, chars, 0);
+        plain = false;
+    }
+
+    // Cell of the char at text index `index`; the index past the text maps to the row's width.
+    int column(int index) {
+        return plain || index > length ? index : cols[index];
+    }
+
+    // First text index whose cell is at or after `col`. Columns past the row keep their distance
+    // from its end, so open-ended bounds like Integer.MAX_VALUE stay open.
+    int index(int col) {
+        if (plain) return col;
+        if (col > cols[length]) return (int) Math.min(Integer.MAX_VALUE, (long) length + col - cols[length]);
+        int i = 0;
+        while (cols[i] < col) i++;
+        return i;
+    }
+}
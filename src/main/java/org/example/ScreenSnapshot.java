@@ -0,0 +1,83 @@
+package org.example;
+
+// Immutable copy of the screen and cursor taken by TerminalBuffer.snapshot(). Row arrays are
+// shared with the previous snapshot for rows that did not change in between.
+public final class ScreenSnapshot {
+    private final int width;
+    private final int height;
+    private final int cursorRow;
+    private final int cursorCol;
+    private final long sequence;
+    private final boolean[] changed;
+
+    final Line[] sources;
+    final long[] versions;
+    final char[][] chars;
+    final short[][] styles;
+    // Cluster texts of each row, null for rows without clusters.
+    final String[][] clusters;
+
+    ScreenSnapshot(int width, int height, int cursorRow, int cursorCol, long sequence, Line[] sources,
+                   long[] versions, char[][] chars, short[][] styles, String[][] clusters, boolean[] changed) {
+        this.width = width;
+        this.height = height;
+        this.cursorRow = cursorRow;
+        this.cursorCol = cursorCol;
+        this.sequence = sequence;
+        this.sources = sources;
+        this.versions = versions;
+        this.chars = chars;
+        this.styles = styles;
+        this.clusters = clusters;
+        this.changed = changed;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getCursorRow() { return cursorRow; }
+    public int getCursorCol() { return cursorCol; }
+
+    // Buffer sequence number at capture time; equal numbers mean identical content.
+    public long getSequence() { return sequence; }
+
+    // Whether the row was copied afresh rather than shared with the previous snapshot.
+    public boolean isRowChanged(int row) {
+        return changed[row];
+    }
+
+    public char getCharAt(int row, int col) {
+        if (row < 0 || row >= height) return ' ';
+        return chars[row][col];
+    }
+
+    public Attributes getAttributesAt(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) return null;
+        return Attributes.decode(styles[row][col]);
+    }
+
+    // Text of the cell: the whole character even outside the BMP or with combining marks, and ""
+    // for the second cell of a wide character.
+    public String getGraphemeAt(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) return "";
+        short style = styles[row][col];
+        if ((style & Line.WIDE_TAIL) != 0) return "";
+        if ((style & Line.CLUSTER) != 0) return clusters[row][col];
+        return String.valueOf(chars[row][col]);
+    }
+
+    public String getLine(int row) {
+        if (row < 0 || row >= height) return "";
+        StringBuilder sb = new StringBuilder(width);
+        Line.appendText(sb, chars[row], styles[row], clusters[row], width);
+        return sb.toString();
+    }
+
+    public String getScreenContent() {
+        StringBuilder sb = new StringBuilder(height * (width + 1));
+        for (int row = 0; row < height; row++) {
+            Line.appendText(sb, chars[row], styles[row], clusters[row], width);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
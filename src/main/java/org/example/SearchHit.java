@@ -0,0 +1,37 @@
+package org.example;
+
+// Position of a search match. Rows count the full content as in contentView(): 0 is the oldest
+// scrollback line and the screen follows the scrollback.
+public final class SearchHit {
+    private final int row;
+    private final int col;
+    private final int length;
+
+    SearchHit(int row, int col, int length) {
+        this.row = row;
+        this.col = col;
+        this.length = length;
+    }
+
+    public int getRow() { return row; }
+    public int getCol() { return col; }
+    public int getLength() { return length; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SearchHit)) return false;
+        SearchHit other = (SearchHit) o;
+        return row == other.row && col == other.col && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (row * 31 + col) * 31 + length;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{row=" + row + ", col=" + col + ", length=" + length + "}";
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import java.util.Arrays;
+
+// Trigram index over the scrollback. Lines are grouped into blocks of BLOCK_LINES by their absolute
+// line number. The trigrams of the block being filled are collected as they come; when the block
+// is complete they become a Bloom filter sized to the block's distinct trigrams, so a block of long
+// varied lines gets as good a filter as a block of short ones. A query skips every complete block
+// whose filter lacks one of the query's trigrams; the block still being filled is always searched.
+// Lines are added in order, and blocks are dropped once all their lines have been evicted from the
+// scrollback.
+final class SearchIndex {
+    static final int BLOCK_LINES = 8;
+    // About 3% false positives per trigram.
+    private static final int BITS_PER_TRIGRAM = 8;
+    private static final int HASHES = 3;
+
+    // Filters of the complete blocks firstBlock .. firstBlock + count - 1, in a ring.
+    private long[][] filters = new long[16][];
+    private int head = 0;
+    private int count = 0;
+    private long firstBlock = 0;
+    // The block being filled and the trigram hashes of its lines so far.
+    private long openBlock = -1;
+    private int[] openHashes = new int[0];
+    private int openCount = 0;
+    private long end = 0;
+
+    // Absolute number of the line after the last one added.
+    long end() {
+        return end;
+    }
+
+    // Index the first `length` chars of absolute line `line`. Lines must be added in order.
+    void add(long line, char[] chars, int length) {
+        end = line + 1;
+        long block = line / BLOCK_LINES;
+        if (block != openBlock) {
+            closeBlock();
+            openBlock = block;
+        }
+        if (openCount + length > openHashes.length) {
+            openHashes = Arrays.copyOf(openHashes, Math.max(2 * openHashes.length, openCount + length));
+        }
+        for (int i = 0; i + 2 < length; i++) {
+            openHashes[openCount++] = hash(chars[i], chars[i + 1], chars[i + 2]);
+        }
+        if (line % BLOCK_LINES == BLOCK_LINES - 1) {
+            closeBlock();
+        }
+    }
+
+    // Turns the trigrams of the open block into its filter.
+    private void closeBlock() {
+        if (openBlock < 0) return;
+        if (count == 0) {
+            firstBlock = openBlock;
+        }
+        // Blocks with no lines added, after a gap in the line numbers, have no filter.
+        while (firstBlock + count < openBlock) {
+            appendBlock(null);
+        }
+        Arrays.sort(openHashes, 0, openCount);
+        int distinct = 0;
+        for (int i = 0; i < openCount; i++) {
+            if (i == 0 || openHashes[i] != openHashes[i - 1]) distinct++;
+        }
+        long[] filter = new long[Math.max(1, (distinct * BITS_PER_TRIGRAM + 63) / 64)];
+        for (int i = 0; i < openCount; i++) {
+            if (i > 0 && openHashes[i] == openHashes[i - 1]) continue;
+            int h = openHashes[i];
+            int step = Integer.rotateLeft(h, 16) | 1;
+            for (int k = 0; k < HASHES; k++, h += step) {
+                int bit = bit(h, filter.length);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        appendBlock(filter);
+        openBlock = -1;
+        openCount = 0;
+    }
+
+    // Drops the blocks that only hold lines before absolute line `line`.
+    void evictBefore(long line) {
+        long block = line / BLOCK_LINES;
+        while (count > 0 && firstBlock < block) {
+            filters[head] = null;
+            head = (head + 1) % filters.length;
+            firstBlock++;
+            count--;
+        }
+        if (openBlock >= 0 && openBlock < block) {
+            openBlock = -1;
+            openCount = 0;
+        }
+    }
+
+    // Forgets the lines from absolute line `line` on, so that they can be added again. The block
+    // holding `line` is forgotten whole, since its filter cannot drop single lines; its earlier
+    // lines are added again along with the rest.
+    void truncate(long line) {
+        if (line >= end) return;
+        long block = line / BLOCK_LINES;
+        end = block * BLOCK_LINES;
+        while (count > 0 && firstBlock + count - 1 >= block) {
+            filters[(head + count - 1) % filters.length] = null;
+            count--;
+        }
+        if (openBlock >= block) {
+            openBlock = -1;
+            openCount = 0;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(filters, null);
+        head = 0;
+        count = 0;
+        openBlock = -1;
+        openCount = 0;
+        end = 0;
+    }
+
+    // Whether the block of absolute line `line` may contain all the given trigram hashes. Lines
+    // outside the complete blocks are never ruled out.
+    boolean blockMayContain(long line, int[] hashes) {
+        long block = line / BLOCK_LINES;
+        if (block < firstBlock || block >= firstBlock + count) return true;
+
+        long[] filter = filters[(head + (int) (block - firstBlock)) % filters.length];
+        if (filter == null) return true;
+        for (int h : hashes) {
+            int step = Integer.rotateLeft(h, 16) | 1;
+            for (int k = 0; k < HASHES; k++, h += step) {
+                int bit = bit(h, filter.length);
+                if ((filter[bit >>> 6] & 1L << bit) == 0) return false;
+            }
+        }
+        return true;
+    }
+
+    // Bit of a filter of `words` longs for hash `h`: its place in the range, scaled from 32 bits.
+    private static int bit(int h, int words) {
+        return (int) ((h & 0xFFFFFFFFL) * (words * 64L) >>> 32);
+    }
+
+    // Trigram hashes of the text, or null if it is too short to use the index.
+    static int[] trigrams(CharSequence text) {
+        if (text.length() < 3) return null;
+        int[] hashes = new int[text.length() - 2];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2));
+        }
+        return hashes;
+    }
+
+    private static int hash(char a, char b, char c) {
+        long key = (long) a << 32 | (long) b << 16 | c;
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private void appendBlock(long[] filter) {
+        if (count == filters.length) {
+            long[][] grown = new long[filters.length * 2][];
+            for (int i = 0; i < count; i++) {
+                grown[i] = filters[(head + i) % filters.length];
+            }
+            filters = grown;
+            head = 0;
+        }
+        filters[(head + count) % filters.length] = filter;
+        count++;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+// A terminal hosted by a SessionManager. Its buffer is either live or hibernated into a compact
+// image; acquire() revives it when needed. A session is only hibernated while nobody holds it, so
+// callers should acquire() the buffer for each burst of use and release() it afterwards instead of
+// keeping the reference: the lines of a hibernated buffer go back to the shared pool.
+public final class Session {
+    private final SessionManager manager;
+    private TerminalBuffer buffer;
+    private byte[] image;
+    private int holders = 0;
+    private long releasedAt;
+    private boolean closed = false;
+
+    Session(SessionManager manager, TerminalBuffer buffer) {
+        this.manager = manager;
+        this.buffer = buffer;
+        this.releasedAt = System.nanoTime();
+    }
+
+    public synchronized TerminalBuffer acquire() {
+        if (closed) throw new IllegalStateException("session is closed");
+        if (buffer == null) {
+            buffer = TerminalBuffer.revive(image, manager.pool);
+            image = null;
+            manager.onRevive();
+        }
+        holders++;
+        return buffer;
+    }
+
+    public synchronized void release() {
+        if (holders == 0) throw new IllegalStateException("session is not acquired");
+        holders--;
+        releasedAt = System.nanoTime();
+    }
+
+    public synchronized boolean isHibernated() {
+        return buffer == null && !closed;
+    }
+
+    // Size of the hibernated image in bytes, or 0 while the buffer is live.
+    public synchronized int getImageSize() {
+        return image == null ? 0 : image.length;
+    }
+
+    // Hibernates the session unless it is held, closed or already hibernated.
+    public synchronized boolean hibernate() {
+        if (holders > 0 || buffer == null || closed) return false;
+        image = buffer.hibernate();
+        buffer.release();
+        buffer = null;
+        manager.onHibernate();
+        return true;
+    }
+
+    synchronized boolean hibernateIfIdleSince(long time) {
+        return releasedAt - time <= 0 && hibernate();
+    }
+
+    // Drops the session and gives its lines back to the pool. It must not be held.
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            if (holders > 0) throw new IllegalStateException("session is acquired");
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            } else {
+                manager.onRevive();
+            }
+            image = null;
+            closed = true;
+        }
+        manager.remove(this);
+    }
+}
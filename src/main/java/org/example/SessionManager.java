@@ -0,0 +1,67 @@
+package org.example;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hosts many terminals in one JVM. Their buffers allocate screen rows only when first written and
+// draw them from a pool shared by all sessions; idle sessions can be hibernated into a deflated
+// image of a few KB and are revived on their next acquire().
+public final class SessionManager {
+    private static final int DEFAULT_POOLED_LINES = 4096;
+
+    final LinePool pool;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger hibernated = new AtomicInteger();
+
+    public SessionManager() {
+        this(DEFAULT_POOLED_LINES);
+    }
+
+    // Keeps up to `maxPooledLines` lines from cleared and hibernated screens for reuse.
+    public SessionManager(int maxPooledLines) {
+        this.pool = new LinePool(maxPooledLines);
+    }
+
+    public Session open(int width, int height, int scrollbackMax) {
+        Session session = new Session(this, new TerminalBuffer(width, height, scrollbackMax, pool));
+        sessions.add(session);
+        return session;
+    }
+
+    // Hibernates the sessions that nobody holds and that were last released at least `idle` ago.
+    // Returns the number of sessions hibernated.
+    public int hibernateIdle(long idle, TimeUnit unit) {
+        long before = System.nanoTime() - unit.toNanos(idle);
+        int count = 0;
+        for (Session session : sessions) {
+            if (session.hibernateIfIdleSince(before)) count++;
+        }
+        return count;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getHibernatedCount() {
+        return hibernated.get();
+    }
+
+    public int getPooledLineCount() {
+        return pool.size();
+    }
+
+    void onHibernate() {
+        hibernated.incrementAndGet();
+    }
+
+    void onRevive() {
+        hibernated.decrementAndGet();
+    }
+
+    void remove(Session session) {
+        sessions.remove(session);
+    }
+}
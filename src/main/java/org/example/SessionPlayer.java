@@ -0,0 +1,241 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Replays a log written by SessionRecorder. Opening it reads only the chunk headers. seek() restores
+// the nearest keyframe at or before the requested time and applies the events after it, or carries
+// on from the current state when that is closer. A delta keyframe is restored from the full keyframe
+// before it and the delta keyframes in between. A chunk cut short at the end of the log, as a
+// crash while recording leaves it, is ignored. Replayed buffers have no disk tier.
+public final class SessionPlayer {
+    private final SeekableByteChannel channel;
+    private long[] offsets = new long[64];
+    private byte[] types = new byte[64];
+    private long[] firstTimes = new long[64];
+    private long[] lastTimes = new long[64];
+    private int chunkCount;
+    private int[] keyframes = new int[16];
+    private int keyframeCount;
+    private long duration;
+
+    private TerminalBuffer buffer;
+    // Next chunk to load and the unapplied events of the loaded one.
+    private int nextChunk;
+    private ByteBuffer chunk = ByteBuffer.allocate(SessionRecorder.CHUNK_BYTES).flip();
+    private long time;
+    private char[] text = new char[256];
+
+    public SessionPlayer(SeekableByteChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(SessionRecorder.CHUNK_HEADER_BYTES);
+        header.limit(5);
+        readFully(header, 0);
+        if (header.getInt(0) != SessionRecorder.MAGIC) {
+            throw new IOException("not a session recording");
+        }
+        if (header.get(4) < 1 || header.get(4) > SessionRecorder.VERSION) {
+            throw new IOException("unsupported recording version " + header.get(4));
+        }
+        long offset = 5;
+        long size = channel.size();
+        while (offset + SessionRecorder.CHUNK_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, offset);
+            int length = header.getInt(17);
+            if (offset + SessionRecorder.CHUNK_HEADER_BYTES + length > size) break;
+            addChunk(offset, header.get(0), header.getLong(1), header.getLong(9));
+            offset += SessionRecorder.CHUNK_HEADER_BYTES + length;
+        }
+        if (keyframeCount == 0 || types[keyframes[0]] != SessionRecorder.KEYFRAME) {
+            throw new IOException("recording has no keyframe");
+        }
+    }
+
+    private void addChunk(long offset, byte type, long first, long last) {
+        if (chunkCount == offsets.length) {
+            int capacity = 2 * chunkCount;
+            offsets = Arrays.copyOf(offsets, capacity);
+            types = Arrays.copyOf(types, capacity);
+            firstTimes = Arrays.copyOf(firstTimes, capacity);
+            lastTimes = Arrays.copyOf(lastTimes, capacity);
+        }
+        if (type == SessionRecorder.KEYFRAME || type == SessionRecorder.DELTA_KEYFRAME) {
+            if (keyframeCount == keyframes.length) {
+                keyframes = Arrays.copyOf(keyframes, 2 * keyframeCount);
+            }
+            keyframes[keyframeCount++] = chunkCount;
+        }
+        offsets[chunkCount] = offset;
+        types[chunkCount] = type;
+        firstTimes[chunkCount] = first;
+        lastTimes[chunkCount] = last;
+        chunkCount++;
+        duration = Math.max(duration, last);
+    }
+
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(duration, TimeUnit.MICROSECONDS);
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    // Returns the buffer as it was after the last change at or before `time` since the recording
+    // started. The buffer belongs to the player: later seeks change or replace it.
+    public TerminalBuffer seek(long time, TimeUnit unit) throws IOException {
+        long target = unit.toMicros(time);
+        int keyframe = keyframeAt(target);
+        if (buffer == null || target < this.time || nextChunk <= keyframe) {
+            restore(keyframe);
+        }
+        apply(target);
+        return buffer;
+    }
+
+    // Headless replay: applies every recorded change from the first keyframe on, as fast as the
+    // buffer takes them, and returns the final buffer.
+    public TerminalBuffer replay() throws IOException {
+        restore(keyframes[0]);
+        apply(Long.MAX_VALUE);
+        return buffer;
+    }
+
+    // Chunk index of the last keyframe taken at or before `target`.
+    private int keyframeAt(long target) {
+        int lo = 0;
+        int hi = keyframeCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstTimes[keyframes[mid]] <= target) lo = mid;
+            else hi = mid - 1;
+        }
+        return keyframes[lo];
+    }
+
+    private void restore(int index) throws IOException {
+        int first = index;
+        while (types[first] != SessionRecorder.KEYFRAME) {
+            first--;
+        }
+        ByteBuffer image = read(first, ByteBuffer.allocate(0));
+        buffer = TerminalBuffer.restore(Channels.newChannel(
+                new ByteArrayInputStream(image.array(), 0, image.limit())));
+        for (int i = first + 1; i <= index; i++) {
+            if (types[i] == SessionRecorder.DELTA_KEYFRAME) {
+                image = read(i, image);
+                buffer.restoreDelta(Channels.newChannel(
+                        new ByteArrayInputStream(image.array(), 0, image.limit())));
+            }
+        }
+        time = firstTimes[index];
+        nextChunk = index + 1;
+        chunk.position(chunk.limit());
+    }
+
+    private void apply(long target) throws IOException {
+        while (true) {
+            while (chunk.hasRemaining()) {
+                int start = chunk.position();
+                long eventTime = time + readVarInt(chunk);
+                if (eventTime > target) {
+                    chunk.position(start);
+                    return;
+                }
+                time = eventTime;
+                applyEvent();
+            }
+            while (nextChunk < chunkCount && types[nextChunk] != SessionRecorder.EVENTS) {
+                nextChunk++;
+            }
+            if (nextChunk == chunkCount || firstTimes[nextChunk] > target) return;
+            chunk = read(nextChunk, chunk);
+            // The first event of a chunk carries no delta; its time is in the chunk header.
+            time = firstTimes[nextChunk];
+            nextChunk++;
+        }
+    }
+
+    private void applyEvent() throws IOException {
+        ByteBuffer in = chunk;
+        TerminalBuffer buffer = this.buffer;
+        int op = in.get();
+        switch (op) {
+            case SessionRecorder.WRITE -> buffer.write(text, 0, readText(in));
+            case SessionRecorder.INSERT -> buffer.insert(CharBuffer.wrap(text, 0, readText(in)));
+            case SessionRecorder.SET_CURSOR -> buffer.setCursor(readVarInt(in), readVarInt(in));
+            case SessionRecorder.MOVE_UP -> buffer.moveUp(readVarInt(in));
+            case SessionRecorder.MOVE_DOWN -> buffer.moveDown(readVarInt(in));
+            case SessionRecorder.MOVE_LEFT -> buffer.moveLeft(readVarInt(in));
+            case SessionRecorder.MOVE_RIGHT -> buffer.moveRight(readVarInt(in));
+            case SessionRecorder.ATTRIBUTES -> buffer.setAttributes(Attributes.decode((short) readVarInt(in)));
+            case SessionRecorder.FILL_LINE -> buffer.fillLine(readVarInt(in), (char) readVarInt(in));
+            case SessionRecorder.FILL_RANGE ->
+                    buffer.fillLine(readVarInt(in), readVarInt(in), readVarInt(in), (char) readVarInt(in));
+            case SessionRecorder.INSERT_EMPTY_LINE -> buffer.insertEmptyLineAtBottom();
+            case SessionRecorder.CLEAR_SCREEN -> buffer.clearScreen();
+            case SessionRecorder.CLEAR_SCROLLBACK -> buffer.clearScrollback();
+            case SessionRecorder.RESIZE -> buffer.resize(readVarInt(in), readVarInt(in));
+            case SessionRecorder.SAVE_CURSOR -> buffer.saveCursor();
+            case SessionRecorder.RESTORE_CURSOR -> buffer.restoreCursor();
+            case SessionRecorder.ENTER_ALTERNATE -> buffer.enterAlternateScreen();
+            case SessionRecorder.EXIT_ALTERNATE -> buffer.exitAlternateScreen();
+            case SessionRecorder.OVERFLOW_WRAP -> buffer.setInsertOverflowWrap(readVarInt(in) != 0);
+            case SessionRecorder.CARRIAGE_RETURN -> buffer.carriageReturn();
+            case SessionRecorder.LINE_FEED -> buffer.lineFeed();
+            default -> throw new IOException("unknown event " + op);
+        }
+    }
+
+    private int readText(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (text.length < length) {
+            text = new char[Math.max(length, 2 * text.length)];
+        }
+        char[] text = this.text;
+        for (int i = 0; i < length; i++) {
+            text[i] = (char) readVarInt(in);
+        }
+        return length;
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    // Reads the body of chunk `index` into `into`, or into a larger buffer when it does not fit.
+    private ByteBuffer read(int index, ByteBuffer into) throws IOException {
+        long offset = offsets[index];
+        ByteBuffer header = ByteBuffer.allocate(SessionRecorder.CHUNK_HEADER_BYTES);
+        readFully(header, offset);
+        int length = header.getInt(17);
+        if (into.capacity() < length) {
+            into = ByteBuffer.allocate(length);
+        }
+        into.clear().limit(length);
+        readFully(into, offset + SessionRecorder.CHUNK_HEADER_BYTES);
+        return into.flip();
+    }
+
+    private void readFully(ByteBuffer into, long offset) throws IOException {
+        channel.position(offset);
+        while (into.hasRemaining()) {
+            if (channel.read(into) < 0) {
+                throw new EOFException("recording ended early");
+            }
+        }
+    }
+}
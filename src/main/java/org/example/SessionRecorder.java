@@ -0,0 +1,233 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Records every change made to a TerminalBuffer as a timestamped append-only log that
+// SessionPlayer can replay or seek in. The log is a header followed by chunks:
+//
+//   int  MAGIC, byte VERSION
+//   chunk: byte type, long first time, long last time, int length, length bytes
+//
+// Times are microseconds since the recording started. An EVENTS chunk holds up to CHUNK_BYTES of
+// events, each a varint time delta from the previous event, an opcode and its arguments. A keyframe
+// is taken when recording starts and then after every `keyframeBytes` of events, so a seek replays
+// at most that much. A KEYFRAME chunk holds the buffer state as written by TerminalBuffer.save(). A
+// DELTA_KEYFRAME chunk holds the same image with only the scrollback lines added since the previous
+// keyframe, so that keyframes cost the screen plus new history rather than all of the history. A
+// full keyframe is taken instead after a resize or clear rewrote the scrollback, and once a whole
+// scrollback of lines has come in since the last full one, which bounds what a seek has to read.
+// All calls, including the recording itself, happen on the buffer's writer thread.
+public final class SessionRecorder implements Closeable {
+    static final int MAGIC = 0x54524543; // "TREC"
+    static final int VERSION = 2;
+    static final int EVENTS = 1;
+    static final int KEYFRAME = 2;
+    static final int DELTA_KEYFRAME = 3;
+    static final int CHUNK_HEADER_BYTES = 21;
+    static final int CHUNK_BYTES = 64 << 10;
+    private static final int DEFAULT_KEYFRAME_BYTES = 1 << 20;
+
+    static final int WRITE = 1;
+    static final int INSERT = 2;
+    static final int SET_CURSOR = 3;
+    static final int MOVE_UP = 4;
+    static final int MOVE_DOWN = 5;
+    static final int MOVE_LEFT = 6;
+    static final int MOVE_RIGHT = 7;
+    static final int ATTRIBUTES = 8;
+    static final int FILL_LINE = 9;
+    static final int FILL_RANGE = 10;
+    static final int INSERT_EMPTY_LINE = 11;
+    static final int CLEAR_SCREEN = 12;
+    static final int CLEAR_SCROLLBACK = 13;
+    static final int RESIZE = 14;
+    static final int SAVE_CURSOR = 15;
+    static final int RESTORE_CURSOR = 16;
+    static final int ENTER_ALTERNATE = 17;
+    static final int EXIT_ALTERNATE = 18;
+    static final int OVERFLOW_WRAP = 19;
+    static final int CARRIAGE_RETURN = 20;
+    static final int LINE_FEED = 21;
+
+    private final TerminalBuffer buffer;
+    private final ChannelOutput out;
+    private final int keyframeBytes;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final ByteArrayOutputStream keyframe = new ByteArrayOutputStream();
+
+    private byte[] events = new byte[CHUNK_BYTES + 64];
+    private int length;
+    private long firstTime;
+    private long lastTime;
+    private long sinceKeyframe;
+    // Scrollback position at the last keyframe and at the last full one, and the rewrite count then.
+    private long keyframeLine;
+    private long fullKeyframeLine;
+    private long keyframeRewrites;
+    private boolean closed;
+
+    // Starts recording `buffer` to `out` with a keyframe every megabyte of events.
+    public SessionRecorder(TerminalBuffer buffer, WritableByteChannel out) throws IOException {
+        this(buffer, out, DEFAULT_KEYFRAME_BYTES, System::nanoTime);
+    }
+
+    // `nanoClock` supplies the event times, as System.nanoTime() does by default.
+    public SessionRecorder(TerminalBuffer buffer, WritableByteChannel out, int keyframeBytes, LongSupplier nanoClock)
+            throws IOException {
+        if (keyframeBytes < 1) {
+            throw new IllegalArgumentException("keyframeBytes must be positive: " + keyframeBytes);
+        }
+        this.buffer = buffer;
+        this.out = new ChannelOutput(out);
+        this.keyframeBytes = keyframeBytes;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.out.putInt(MAGIC);
+        this.out.putByte(VERSION);
+        writeKeyframe(0, true);
+        buffer.setRecorder(this);
+    }
+
+    void record(int op) {
+        begin(op, 0);
+    }
+
+    void record(int op, int a) {
+        begin(op, 10);
+        putVarInt(a);
+    }
+
+    void record(int op, int a, int b) {
+        begin(op, 15);
+        putVarInt(a);
+        putVarInt(b);
+    }
+
+    void record(int op, int a, int b, int c, int d) {
+        begin(op, 25);
+        putVarInt(a);
+        putVarInt(b);
+        putVarInt(c);
+        putVarInt(d);
+    }
+
+    void record(int op, CharSequence text) {
+        int count = text.length();
+        begin(op, 5 + 3 * count);
+        putVarInt(count);
+        for (int i = 0; i < count; i++) {
+            putChar(text.charAt(i));
+        }
+    }
+
+    void record(int op, char[] text, int offset, int count) {
+        begin(op, 5 + 3 * count);
+        putVarInt(count);
+        for (int i = offset; i < offset + count; i++) {
+            putChar(text[i]);
+        }
+    }
+
+    // Starts an event, first closing the chunk (and taking a keyframe) when one is due, and makes
+    // room for `argumentBytes` more bytes.
+    private void begin(int op, int argumentBytes) {
+        long time = TimeUnit.NANOSECONDS.toMicros(nanoClock.getAsLong() - startNanos);
+        time = Math.max(time, lastTime);
+        try {
+            if (sinceKeyframe + length >= keyframeBytes) {
+                flushEvents();
+                writeKeyframe(lastTime, buffer.scrollbackRewrites() != keyframeRewrites
+                        || buffer.linesScrolledOut() - fullKeyframeLine >= buffer.scrollbackMax());
+                sinceKeyframe = 0;
+            } else if (length >= CHUNK_BYTES) {
+                flushEvents();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (length == 0) {
+            firstTime = time;
+        }
+        if (events.length - length < 6 + argumentBytes) {
+            events = Arrays.copyOf(events, Math.max(2 * events.length, length + 6 + argumentBytes));
+        }
+        putVarInt((int) Math.min(Integer.MAX_VALUE, length == 0 ? 0 : time - lastTime));
+        events[length++] = (byte) op;
+        lastTime = time;
+    }
+
+    private void putChar(char ch) {
+        if (ch < 0x80) {
+            events[length++] = (byte) ch;
+        } else {
+            putVarInt(ch);
+        }
+    }
+
+    private void putVarInt(int value) {
+        byte[] events = this.events;
+        int at = length;
+        while ((value & ~0x7F) != 0) {
+            events[at++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        events[at++] = (byte) value;
+        length = at;
+    }
+
+    private void flushEvents() throws IOException {
+        if (length == 0) return;
+        writeChunkHeader(EVENTS, firstTime, lastTime, length);
+        out.put(ByteBuffer.wrap(events, 0, length));
+        sinceKeyframe += length;
+        if (events.length > CHUNK_BYTES + 64) {
+            events = new byte[CHUNK_BYTES + 64];
+        }
+        length = 0;
+    }
+
+    private void writeKeyframe(long time, boolean full) throws IOException {
+        keyframe.reset();
+        buffer.save(Channels.newChannel(keyframe), full ? 0 : keyframeLine);
+        writeChunkHeader(full ? KEYFRAME : DELTA_KEYFRAME, time, time, keyframe.size());
+        out.put(ByteBuffer.wrap(keyframe.toByteArray()));
+        keyframeLine = buffer.linesScrolledOut();
+        keyframeRewrites = buffer.scrollbackRewrites();
+        if (full) {
+            fullKeyframeLine = keyframeLine;
+        }
+    }
+
+    private void writeChunkHeader(int type, long first, long last, int length) throws IOException {
+        out.putByte(type);
+        out.putLong(first);
+        out.putLong(last);
+        out.putInt(length);
+    }
+
+    // Writes the recorded events to the channel, for example before the channel is forced to disk.
+    public void flush() throws IOException {
+        if (closed) return;
+        flushEvents();
+        out.flush();
+    }
+
+    // Stops recording and flushes the log. The channel is left open.
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        flush();
+        closed = true;
+        buffer.setRecorder(null);
+    }
+}
@@ -0,0 +1,150 @@
+package org.example;
+
+// Reusable cursor over the style runs of a range of rows: maximal stretches of cells in one row
+// that share their Attributes, so a renderer can issue one text draw call per run.
+//
+//   StyleRuns runs = new StyleRuns();
+//   buffer.styleRuns(fromRow, toRow, runs);
+//   while (runs.next()) {
+//       draw(runs.row(), runs.startCol(), runs.length(), runs.attributes(),
+//            runs.chars(), runs.charOffset(), runs.charCount());
+//   }
+//
+// The chars are the run's text: the stored chars themselves for plain rows, and for rows with wide
+// characters or clusters the text rendered as getLine() does, so a run may have fewer or more chars
+// than cells. Each row is copied out of the buffer in one consistent read when the cursor reaches
+// it, so any thread may iterate; rows reached later may show later writes. Nothing is allocated
+// per run or per cell; scrollback rows cost a small decoding wrapper each.
+public final class StyleRuns {
+    private final Text text = new Text();
+
+    private TerminalBuffer buffer;
+    private int nextRow;
+    private int toRow;
+    private Line line;
+    private boolean plain;
+    private int width;
+    private int col;
+
+    private int row = -1;
+    private int startCol;
+    private int length;
+    private int code;
+    private char[] chars;
+    private int charOffset;
+    private int charCount;
+    private char[] rendered = new char[0];
+
+    void start(TerminalBuffer buffer, int fromRow, int toRow) {
+        this.buffer = buffer;
+        this.nextRow = fromRow;
+        this.toRow = toRow;
+        this.width = 0;
+        this.col = 0;
+        this.row = -1;
+    }
+
+    // Moves to the next run, returning false when the rows are done or the buffer no longer
+    // has the next row.
+    public boolean next() {
+        while (col >= width) {
+            if (nextRow >= toRow) return false;
+            line = buffer.copyRow(nextRow, line);
+            if (line == null) {
+                nextRow = toRow;
+                return false;
+            }
+            row = nextRow++;
+            width = line.width();
+            plain = Line.isPlain(line.styles, width);
+            col = 0;
+        }
+        short[] styles = line.styles;
+        int start = col;
+        int code = styles[start] & Attributes.CODE_MASK;
+        int end = start + 1;
+        while (end < width && (styles[end] & Attributes.CODE_MASK) == code) end++;
+
+        this.startCol = start;
+        this.length = end - start;
+        this.code = code;
+        if (plain) {
+            chars = line.chars;
+            charOffset = start;
+            charCount = end - start;
+        } else {
+            render(start, end);
+        }
+        col = end;
+        return true;
+    }
+
+    private void render(int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            short style = line.styles[i];
+            if ((style & Line.WIDE_TAIL) != 0) continue;
+            if ((style & Line.CLUSTER) != 0) {
+                String cluster = line.clusters[i];
+                ensureRendered(count + cluster.length());
+                cluster.getChars(0, cluster.length(), rendered, count);
+                count += cluster.length();
+            } else {
+                ensureRendered(count + 1);
+                rendered[count++] = line.chars[i];
+            }
+        }
+        chars = rendered;
+        charOffset = 0;
+        charCount = count;
+    }
+
+    private void ensureRendered(int capacity) {
+        if (rendered.length < capacity) {
+            char[] grown = new char[Math.max(capacity, Math.max(2 * rendered.length, width))];
+            System.arraycopy(rendered, 0, grown, 0, rendered.length);
+            rendered = grown;
+        }
+    }
+
+    // Row of the run in contentView() numbering: 0 is the oldest scrollback line.
+    public int row() { return row; }
+    public int startCol() { return startCol; }
+    // Number of cells in the run.
+    public int length() { return length; }
+    public Attributes attributes() { return Attributes.decode((short) code); }
+
+    // The run's text is chars()[charOffset(), charOffset() + charCount()). The array belongs to the
+    // cursor and is overwritten by next().
+    public char[] chars() { return chars; }
+    public int charOffset() { return charOffset; }
+    public int charCount() { return charCount; }
+
+    // The run's text as a view that next() moves along; copy it with toString() to keep it.
+    public CharSequence text() { return text; }
+
+    private final class Text implements CharSequence {
+        @Override
+        public int length() {
+            return charCount;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= charCount) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + charCount);
+            }
+            return chars[charOffset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, charOffset, charCount);
+        }
+    }
+}
@@ -1,55 +1,261 @@
 package org.example;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
-public class TerminalBuffer {
+// Single-writer buffer: all mutating calls must come from one thread at a time. Other threads may
+// call the content getters, the append methods and snapshot() concurrently; they read
+// optimistically under a sequence counter and retry on conflict, so they never block the writer.
+// lineView(), contentView() and collectDamage() belong to the writer thread.
+public class TerminalBuffer implements CharSink {
+    private static final VarHandle SEQ;
+    // Rows scrolled off during a batch that are kept unfrozen before the batch freezes them early.
+    private static final int MAX_PENDING_LINES = 256;
+    private static final int SNAPSHOT_MAGIC = 0x54425546; // "TBUF"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_OVERFLOW_WRAP = 1;
+    private static final int SNAPSHOT_ALTERNATE = 2;
 
-    private final int width;
-    private final int height;
+    static {
+        try {
+            SEQ = MethodHandles.lookup().findVarHandle(TerminalBuffer.class, "seq", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int width;
+    private int height;
     private final int scrollbackMax;
 
-    private final List<List<Cell>> screen;
-    private final LinkedList<List<Cell>> scrollback;
-    private final Attributes currentAttributes = new Attributes();
+    // The screen rows, preceded during a batch by `pendingLines` rows that have scrolled off but
+    // are not frozen yet. Those count as the newest scrollback lines.
+    private LineStore screen;
+    private int pendingLines = 0;
+    // While `alternate` is set, `screen` is the alternate screen, which has no scrollback, and the
+    // primary one waits here. Otherwise this keeps the last alternate screen for reuse, if any.
+    private LineStore inactiveScreen;
+    private boolean alternate = false;
+    // Source of screen lines shared with other buffers, or null.
+    private final LinePool pool;
+    private FrozenLines frozen;
+    private final MappedScrollback disk;
+    private final SearchIndex index = new SearchIndex();
+    // Absolute number of the line after the newest scrollback line; numbers lines for the index.
+    // Grows as lines scroll out; a resize renumbers only the lines it re-splits.
+    private long scrolledOut = 0;
+    // Counts the changes to the scrollback other than lines scrolling in: resizes and clears.
+    private long scrollbackRewrites = 0;
+    private Attributes currentAttributes = Attributes.DEFAULT;
+    private short currentStyle = Attributes.DEFAULT_CODE;
 
     private int cursorRow = 0;
     private int cursorCol = 0;
+    // Row the cursor wrapped away from at the end of the last write. It is marked as continuing
+    // once printing resumes at the start of the next row, and forgotten if the cursor moves.
+    // When it is the cursor row itself, the last write filled the bottom row and the scroll that
+    // wrapping needs is still to come, so the next write continues below that row.
+    private int wrapPendingRow = -1;
+    // Set by saveCursor() and by entering the alternate screen.
+    private int savedCursorRow = 0;
+    private int savedCursorCol = 0;
+    private Attributes savedAttributes = Attributes.DEFAULT;
+
+    private boolean insertOverflowWrap = false;
+    private char[] spillChars;
+    private short[] spillStyles;
+    private String[] spillClusters;
+    private char[] spillCarryChars;
+    private short[] spillCarryStyles;
+    private String[] spillCarryClusters;
+
+    // Optional; null keeps all bookkeeping off the hot paths.
+    private volatile BufferMetrics metrics;
+    private SessionRecorder recorder;
+
+    private Damage damage;
+    private Damage spareDamage;
+    private int collectedCursorRow = 0;
+    private int collectedCursorCol = 0;
+
+    // Odd while a write is in progress. Lines record the value of their last modification.
+    private long seq = 0;
+    private int writeDepth = 0;
+    private int batchDepth = 0;
+    // Thread inside an open batch. Its reads run against the unfinished batch instead of waiting.
+    private Thread batchThread;
 
     public TerminalBuffer(int width, int height, int scrollbackMax) {
+        this(width, height, scrollbackMax, null, scrollbackMax);
+    }
+
+    // Keeps only the newest `inMemoryScrollback` scrollback lines on the heap; older lines, up to
+    // scrollbackMax in total, are moved to `disk`. The caller owns `disk` and closes it.
+    public TerminalBuffer(int width, int height, int scrollbackMax, MappedScrollback disk, int inMemoryScrollback) {
+        this(width, height, scrollbackMax, disk, inMemoryScrollback, null);
+    }
+
+    // Takes screen lines from `pool` and gives them back when rows are cleared.
+    TerminalBuffer(int width, int height, int scrollbackMax, LinePool pool) {
+        this(width, height, scrollbackMax, null, scrollbackMax, pool);
+    }
+
+    private TerminalBuffer(int width, int height, int scrollbackMax, MappedScrollback disk, int inMemoryScrollback,
+                           LinePool pool) {
         this.width = width;
         this.height = height;
         this.scrollbackMax = scrollbackMax;
+        this.disk = disk;
+        this.pool = pool;
 
-        this.screen = new ArrayList<>();
-        this.scrollback = new LinkedList<>();
+        this.screen = new LineStore(width, height, pool);
+        this.frozen = new FrozenLines(disk == null ? scrollbackMax : Math.min(scrollbackMax, inMemoryScrollback));
 
         for (int i = 0; i < height; i++) {
-            screen.add(createEmptyLine());
+            screen.append();
         }
+
+        this.spillChars = new char[width];
+        this.spillStyles = new short[width];
+        this.spillClusters = new String[width];
+        this.spillCarryChars = new char[width];
+        this.spillCarryStyles = new short[width];
+        this.spillCarryClusters = new String[width];
+
+        this.damage = new Damage(width, height);
+        this.spareDamage = new Damage(width, height);
     }
 
-    private List<Cell> createEmptyLine() {
-        List<Cell> line = new ArrayList<>();
-        for (int i = 0; i < width; i++) {
-            line.add(Cell.empty());
-        }
-        return line;
+    private int scrollbackSize() {
+        return diskSize() + frozen.size() + pendingLines;
+    }
+
+    private int diskSize() {
+        return disk == null ? 0 : (int) disk.size();
+    }
+
+    private Line screenLine(int row) {
+        return screen.get(pendingLines + row);
+    }
+
+    // Screen row for writing; a row that is still blank gets its own line first.
+    private Line editLine(int row) {
+        return screen.edit(pendingLines + row);
     }
 
     private void scrollUp() {
-        List<Cell> top = screen.remove(0);
-        scrollback.add(top);
+        boolean keep = scrollbackMax > 0 && !alternate;
+        if (batchDepth > 0 && keep) {
+            deferScroll();
+        } else {
+            // The top row is frozen into the scrollback and its arrays are reused for the new bottom row.
+            if (keep) {
+                pushScrollback(LineCodec.freeze(screenLine(0)));
+            }
+            screen.rotate();
+        }
+        BufferMetrics metrics = this.metrics;
+        if (metrics != null && keep) {
+            metrics.onScroll();
+        }
+        wrapPendingRow = -1;
+        screen.stamp(pendingLines + height - 1, seq);
+        damage.scroll(1);
+    }
+
+    // Appends a record to the scrollback. A record evicted from the in-memory scrollback moves to
+    // disk, if there is room there.
+    private void pushScrollback(byte[] record) {
+        scrolledOut++;
+        byte[] evicted = frozen.append(record);
+        if (evicted != null) {
+            moveToDisk(evicted);
+        }
+        index.evictBefore(scrolledOut - scrollbackSize());
+    }
+
+    // Keeps a record evicted from the full in-memory scrollback on disk, if there is room there.
+    private void moveToDisk(byte[] record) {
+        if (!hasDiskRoom()) {
+            countEviction();
+            return;
+        }
+        disk.append(record);
+        if (disk.size() > scrollbackMax - frozen.capacity()) {
+            disk.dropOldest(1);
+            countEviction();
+        }
+    }
+
+    private void countEviction() {
+        BufferMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onEvict(1);
+        }
+    }
+
+    private boolean hasDiskRoom() {
+        return disk != null && scrollbackMax > frozen.capacity();
+    }
 
-        if (scrollback.size() > scrollbackMax) {
-            scrollback.removeFirst();
+    // Scrolls within a batch: the top row stays in the store above the screen and a new blank row
+    // is added below, so freezing can wait until the batch ends. A pending row that the scrollback
+    // evicts before then is dropped without ever being frozen, unless it goes to disk.
+    private void deferScroll() {
+        screen.append();
+        pendingLines++;
+        scrolledOut++;
+        if (frozen.size() + pendingLines > frozen.capacity()) {
+            if (frozen.size() > 0) {
+                moveToDisk(frozen.removeFirst());
+            } else {
+                if (hasDiskRoom()) {
+                    moveToDisk(LineCodec.freeze(screen.get(0)));
+                } else {
+                    countEviction();
+                }
+                screen.removeFirst(1);
+                pendingLines--;
+            }
+            index.evictBefore(scrolledOut - scrollbackSize());
+        }
+        if (pendingLines == MAX_PENDING_LINES) {
+            freezePendingLines();
         }
+    }
 
-        screen.add(createEmptyLine());
+    // Freezes the pending rows into the scrollback and drops them from the store in one step.
+    // They always fit: deferScroll() keeps the frozen and pending lines within the capacity.
+    private void freezePendingLines() {
+        for (int i = 0; i < pendingLines; i++) {
+            frozen.append(LineCodec.freeze(screen.get(i)));
+        }
+        screen.removeFirst(pendingLines);
+        pendingLines = 0;
     }
 
     private void newLine() {
+        if (wrapPendingRow == cursorRow) {
+            scrollUp();
+        }
+        wrapPendingRow = -1;
         cursorCol = 0;
         cursorRow++;
         if (cursorRow >= height) {
@@ -59,204 +265,1661 @@ public class TerminalBuffer {
     }
 
     private void ensureCursorInBounds() {
+        wrapPendingRow = -1;
         cursorRow = Math.max(0, Math.min(cursorRow, height - 1));
         cursorCol = Math.max(0, Math.min(cursorCol, width - 1));
     }
 
+    private void beginWrite() {
+        if (writeDepth++ == 0) {
+            SEQ.setOpaque(this, seq + 1);
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    private void endWrite() {
+        if (--writeDepth == 0) {
+            SEQ.setRelease(this, seq + 1);
+        }
+    }
+
+    private long beginRead() {
+        long stamp;
+        while (((stamp = (long) SEQ.getAcquire(this)) & 1) != 0) {
+            if (batchThread == Thread.currentThread()) return stamp;
+            Thread.onSpinWait();
+        }
+        return stamp;
+    }
+
+    // Groups the writes up to the matching endBatch(), for example everything decoded from one read
+    // of the pty. Readers on other threads see the whole batch at once, and rows that scroll off in
+    // the meantime are frozen into the scrollback together at the end, skipping those that would
+    // not survive it. Batches nest; only the writer thread may call these.
+    @Override
+    public void beginBatch() {
+        beginWrite();
+        if (batchDepth++ == 0) {
+            batchThread = Thread.currentThread();
+        }
+    }
+
+    @Override
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch() without beginBatch()");
+        }
+        try {
+            if (--batchDepth == 0) {
+                batchThread = null;
+                freezePendingLines();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Attaches metrics to this buffer, or detaches them with null. Call from the writer thread.
+    public void setMetrics(BufferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Set by SessionRecorder, which each public mutating call below reports to before it runs.
+    void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    private void countAccess(int chars) {
+        BufferMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onAccess(chars);
+        }
+    }
+
+    private boolean validate(long stamp) {
+        VarHandle.loadLoadFence();
+        return (long) SEQ.getOpaque(this) == stamp;
+    }
+
+    private void touch(int row, int fromCol, int toCol) {
+        screen.stamp(pendingLines + row, seq);
+        damage.mark(row, fromCol, toCol);
+    }
+
     public void setAttributes(Color fg, Color bg, boolean bold, boolean italic, boolean underline) {
-        currentAttributes.fg = fg;
-        currentAttributes.bg = bg;
-        currentAttributes.bold = bold;
-        currentAttributes.italic = italic;
-        currentAttributes.underline = underline;
+        setAttributes(Attributes.of(fg, bg, bold, italic, underline));
+    }
+
+    public void setAttributes(Attributes attributes) {
+        if (recorder != null) recorder.record(SessionRecorder.ATTRIBUTES, attributes.encode() & 0xFFFF);
+        currentAttributes = attributes;
+        currentStyle = attributes.encode();
+    }
+
+    public Attributes getAttributes() {
+        return currentAttributes;
     }
 
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
     public int getCursorRow() { return cursorRow; }
     public int getCursorCol() { return cursorCol; }
 
     public void setCursor(int row, int col) {
-        this.cursorRow = row;
-        this.cursorCol = col;
-        ensureCursorInBounds();
+        if (recorder != null) recorder.record(SessionRecorder.SET_CURSOR, row, col);
+        beginWrite();
+        try {
+            this.cursorRow = row;
+            this.cursorCol = col;
+            ensureCursorInBounds();
+        } finally {
+            endWrite();
+        }
     }
 
     public void moveUp(int n) {
-        cursorRow -= n;
-        ensureCursorInBounds();
+        if (recorder != null) recorder.record(SessionRecorder.MOVE_UP, n);
+        beginWrite();
+        try {
+            cursorRow -= n;
+            ensureCursorInBounds();
+        } finally {
+            endWrite();
+        }
     }
 
     public void moveDown(int n) {
-        cursorRow += n;
-        ensureCursorInBounds();
+        if (recorder != null) recorder.record(SessionRecorder.MOVE_DOWN, n);
+        beginWrite();
+        try {
+            cursorRow += n;
+            ensureCursorInBounds();
+        } finally {
+            endWrite();
+        }
     }
 
     public void moveLeft(int n) {
-        cursorCol -= n;
-        ensureCursorInBounds();
+        if (recorder != null) recorder.record(SessionRecorder.MOVE_LEFT, n);
+        beginWrite();
+        try {
+            cursorCol -= n;
+            ensureCursorInBounds();
+        } finally {
+            endWrite();
+        }
     }
 
     public void moveRight(int n) {
+        if (recorder != null) recorder.record(SessionRecorder.MOVE_RIGHT, n);
+        beginWrite();
+        try {
+            cursorCol += n;
+            ensureCursorInBounds();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Terminal carriage return and line feed. A write that fills a row moves the cursor on to the
+    // next row at once, but a terminal keeps it on the filled row until more text comes; these two
+    // honour that, so a full row followed by CR LF is not followed by a blank row. Like '\n' in
+    // write(), the line feed also returns the cursor to column 0.
+    public void carriageReturn() {
+        if (recorder != null) recorder.record(SessionRecorder.CARRIAGE_RETURN);
+        beginWrite();
+        try {
+            if (wrapPendingRow >= 0) {
+                cursorRow = wrapPendingRow;
+                wrapPendingRow = -1;
+            }
+            cursorCol = 0;
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void lineFeed() {
+        if (recorder != null) recorder.record(SessionRecorder.LINE_FEED);
+        beginWrite();
+        try {
+            if (wrapPendingRow == cursorRow) {
+                // The scroll the filled bottom row left pending is the line feed itself.
+                scrollUp();
+                cursorCol = 0;
+            } else if (wrapPendingRow >= 0 && wrapPendingRow == cursorRow - 1 && cursorCol == 0) {
+                wrapPendingRow = -1;
+            } else {
+                newLine();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Moves the cursor past n freshly written cells, wrapping at the right margin. The screen only
+    // scrolls when more input follows, so text that exactly fills the last row does not scroll
+    // until the next write or line break does.
+    // A row the cursor wraps away from is marked as continuing on the next one when printable
+    // input follows (`continues`), or later if printing resumes there.
+    private void advanceCursor(int n, boolean more, boolean continues) {
         cursorCol += n;
-        ensureCursorInBounds();
+        if (cursorCol >= width) {
+            cursorCol = 0;
+            if (continues) {
+                editLine(cursorRow).wrapped = true;
+            }
+            cursorRow++;
+
+            if (cursorRow >= height) {
+                cursorRow = height - 1;
+                if (more) {
+                    scrollUp();
+                } else {
+                    wrapPendingRow = cursorRow;
+                }
+            } else if (!more) {
+                wrapPendingRow = cursorRow - 1;
+            }
+        }
+    }
+
+    private void resumePendingWrap() {
+        if (wrapPendingRow >= 0) {
+            if (wrapPendingRow == cursorRow) {
+                editLine(cursorRow).wrapped = true;
+                scrollUp();
+            } else if (cursorCol == 0 && cursorRow == wrapPendingRow + 1) {
+                editLine(wrapPendingRow).wrapped = true;
+            }
+            wrapPendingRow = -1;
+        }
     }
 
     public void write(String text) {
-        char[] chars = text.toCharArray();
-        for (int idx = 0; idx < chars.length; idx++) {
-            char ch = chars[idx];
+        write((CharSequence) text);
+    }
 
-            if (ch == '\n') {
-                newLine();
-                continue;
+    public void write(CharSequence text) {
+        if (recorder != null) recorder.record(SessionRecorder.WRITE, text);
+        BufferMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        beginWrite();
+        try {
+            int end = text.length();
+            int pos = 0;
+            while (pos < end) {
+                char ch = text.charAt(pos);
+                if (ch == '\n') {
+                    newLine();
+                    pos++;
+                    continue;
+                }
+                if (ch >= CharWidth.SIMPLE_LIMIT) {
+                    resumePendingWrap();
+                    int cp = Character.codePointAt(text, pos);
+                    pos += Character.charCount(cp);
+                    printComplex(cp, pos < end, pos < end && text.charAt(pos) != '\n', false);
+                    continue;
+                }
+
+                int runEnd = simpleRunEnd(text, pos, end);
+                while (pos < runEnd) {
+                    resumePendingWrap();
+                    int n = Math.min(runEnd - pos, width - cursorCol);
+                    Line line = editLine(cursorRow);
+                    line.breakWide(cursorCol, cursorCol + n);
+                    getChars(text, pos, pos + n, line.chars, cursorCol);
+                    Arrays.fill(line.styles, cursorCol, cursorCol + n, currentStyle);
+                    touch(cursorRow, cursorCol, cursorCol + n);
+                    pos += n;
+                    advanceCursor(n, pos < end, pos < end && text.charAt(pos) != '\n');
+                }
             }
+        } finally {
+            endWrite();
+        }
+        if (metrics != null) {
+            metrics.onWrite(text.length(), System.nanoTime() - start);
+        }
+    }
 
-            screen.get(cursorRow).set(cursorCol, new Cell(ch, currentAttributes));
+    @Override
+    public void write(char[] text, int offset, int length) {
+        if (recorder != null) recorder.record(SessionRecorder.WRITE, text, offset, length);
+        BufferMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        beginWrite();
+        try {
+            Objects.checkFromIndexSize(offset, length, text.length);
+            int end = offset + length;
+            int pos = offset;
+            while (pos < end) {
+                char ch = text[pos];
+                if (ch == '\n') {
+                    newLine();
+                    pos++;
+                    continue;
+                }
+                if (ch >= CharWidth.SIMPLE_LIMIT) {
+                    resumePendingWrap();
+                    int cp = Character.codePointAt(text, pos, end);
+                    pos += Character.charCount(cp);
+                    printComplex(cp, pos < end, pos < end && text[pos] != '\n', false);
+                    continue;
+                }
 
-            cursorCol++;
-            if (cursorCol >= width) {
-                cursorCol = 0;
-                cursorRow++;
-
-                if (cursorRow >= height) {
-                    if (idx < chars.length - 1) {
-                        scrollUp();
-                        cursorRow = height - 1;
-                    } else {
-                        cursorRow = height - 1;
-                    }
+                // The run ends at a line break or at a char the plain path cannot place.
+                int runEnd = pos + 1;
+                while (runEnd < end && (ch = text[runEnd]) != '\n' && ch < CharWidth.SIMPLE_LIMIT) {
+                    runEnd++;
+                }
+                while (pos < runEnd) {
+                    resumePendingWrap();
+                    int n = Math.min(runEnd - pos, width - cursorCol);
+                    Line line = editLine(cursorRow);
+                    line.breakWide(cursorCol, cursorCol + n);
+                    System.arraycopy(text, pos, line.chars, cursorCol, n);
+                    Arrays.fill(line.styles, cursorCol, cursorCol + n, currentStyle);
+                    touch(cursorRow, cursorCol, cursorCol + n);
+                    pos += n;
+                    advanceCursor(n, pos < end, pos < end && text[pos] != '\n');
                 }
             }
+        } finally {
+            endWrite();
+        }
+        if (metrics != null) {
+            metrics.onWrite(length, System.nanoTime() - start);
         }
     }
 
-    public void insert(String text) {
-        char[] chars = text.toCharArray();
-        for (int idx = 0; idx < chars.length; idx++) {
-            char ch = chars[idx];
 
-            if (ch == '\n') {
-                newLine();
-                continue;
+    // Writes or inserts a character that the plain path cannot: one that joins the previous cell,
+    // a wide one, or one outside the BMP. A wide character that does not fit in the last column
+    // moves to the next row.
+    private void printComplex(int cp, boolean more, boolean continues, boolean inserting) {
+        int w = CharWidth.of(cp);
+        if (w != 1 && joinPrevious(cp, w)) return;
+        if (w == 0 || w > width) w = 1;
+
+        if (w == 2 && cursorCol == width - 1) {
+            if (!inserting) {
+                Line line = editLine(cursorRow);
+                line.breakWide(cursorCol, width);
+                line.set(cursorCol, ' ', currentStyle);
+                touch(cursorRow, cursorCol, width);
             }
+            advanceCursor(1, true, true);
+        }
 
-            List<Cell> line = screen.get(cursorRow);
+        Line line = editLine(cursorRow);
+        if (inserting) {
+            line.shiftRight(cursorCol, w, insertOverflowWrap ? spillChars : null, spillStyles, spillClusters);
+        } else {
+            line.breakWide(cursorCol, cursorCol + w);
+        }
+        if (Character.isBmpCodePoint(cp)) {
+            line.set(cursorCol, (char) cp, currentStyle);
+        } else {
+            line.setCluster(cursorCol, Character.toString(cp), currentStyle);
+        }
+        if (w == 2) {
+            line.set(cursorCol + 1, ' ', (short) (currentStyle | Line.WIDE_TAIL));
+        }
+        touch(cursorRow, cursorCol, inserting ? width : cursorCol + w);
+        if (inserting && insertOverflowWrap) {
+            spill(cursorRow, w);
+        }
+        advanceCursor(w, more, continues);
+    }
+
+    // Adds a combining character to the cell before the cursor, or a wide one when it completes
+    // a flag or follows a zero width joiner there. Returns false if it does not join.
+    private boolean joinPrevious(int cp, int w) {
+        int row = cursorRow;
+        int col = cursorCol - 1;
+        if (col < 0) {
+            if (row == 0 || !screenLine(row - 1).wrapped && wrapPendingRow != row - 1) return false;
+            row--;
+            col = width - 1;
+        }
+        Line line = screenLine(row);
+        if (col > 0 && (line.styles[col] & Line.WIDE_TAIL) != 0) col--;
+        if (w != 0) {
+            if ((line.styles[col] & Line.CLUSTER) == 0) return false;
+            String text = line.clusters[col];
+            boolean joins = text.charAt(text.length() - 1) == CharWidth.ZWJ
+                    || CharWidth.isRegionalIndicator(cp) && text.length() == 2
+                    && CharWidth.isRegionalIndicator(text.codePointAt(0));
+            if (!joins) return false;
+        }
+        line = editLine(row);
+        line.setCluster(col, line.textAt(col) + Character.toString(cp), line.styles[col]);
+        touch(row, col, col + 1);
+        return true;
+    }
+
+    // End of the run of chars from `from` that the plain path places one per cell: the next line
+    // break, or the next char that may be wide, combine or start a surrogate pair.
+    private static int simpleRunEnd(CharSequence text, int from, int end) {
+        for (int i = from + 1; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n' || ch >= CharWidth.SIMPLE_LIMIT) return i;
+        }
+        return end;
+    }
 
-            for (int i = width - 1; i > cursorCol; i--) {
-                line.set(i, line.get(i - 1));
+    private static void getChars(CharSequence src, int from, int to, char[] dst, int dstOffset) {
+        if (src instanceof String) {
+            ((String) src).getChars(from, to, dst, dstOffset);
+        } else if (src instanceof StringBuilder) {
+            ((StringBuilder) src).getChars(from, to, dst, dstOffset);
+        } else if (src instanceof CharBuffer) {
+            CharBuffer buf = (CharBuffer) src;
+            buf.get(buf.position() + from, dst, dstOffset, to - from);
+        } else {
+            for (int i = from; i < to; i++) {
+                dst[dstOffset++] = src.charAt(i);
             }
+        }
+    }
 
-            line.set(cursorCol, new Cell(ch, currentAttributes));
+    // When enabled, cells that insert() pushes past the right margin continue on the next row
+    // instead of being dropped.
+    public void setInsertOverflowWrap(boolean enabled) {
+        if (recorder != null) recorder.record(SessionRecorder.OVERFLOW_WRAP, enabled ? 1 : 0);
+        this.insertOverflowWrap = enabled;
+    }
 
-            cursorCol++;
-            if (cursorCol >= width) {
-                cursorCol = 0;
-                cursorRow++;
-
-                if (cursorRow >= height) {
-                    if (idx < chars.length - 1) {
-                        scrollUp();
-                        cursorRow = height - 1;
-                    } else {
-                        cursorRow = height - 1;
+    public void insert(String text) {
+        insert((CharSequence) text);
+    }
+
+    public void insert(CharSequence text) {
+        if (recorder != null) recorder.record(SessionRecorder.INSERT, text);
+        BufferMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        beginWrite();
+        try {
+            int end = text.length();
+            int pos = 0;
+            while (pos < end) {
+                char ch = text.charAt(pos);
+                if (ch == '\n') {
+                    newLine();
+                    pos++;
+                    continue;
+                }
+                if (ch >= CharWidth.SIMPLE_LIMIT) {
+                    resumePendingWrap();
+                    int cp = Character.codePointAt(text, pos);
+                    pos += Character.charCount(cp);
+                    printComplex(cp, pos < end, pos < end && text.charAt(pos) != '\n', true);
+                    continue;
+                }
+
+                int runEnd = simpleRunEnd(text, pos, end);
+                while (pos < runEnd) {
+                    resumePendingWrap();
+                    int n = Math.min(runEnd - pos, width - cursorCol);
+                    Line line = editLine(cursorRow);
+                    line.shiftRight(cursorCol, n, insertOverflowWrap ? spillChars : null, spillStyles, spillClusters);
+                    getChars(text, pos, pos + n, line.chars, cursorCol);
+                    Arrays.fill(line.styles, cursorCol, cursorCol + n, currentStyle);
+                    touch(cursorRow, cursorCol, width);
+                    if (insertOverflowWrap) {
+                        spill(cursorRow, n);
                     }
+                    pos += n;
+                    advanceCursor(n, pos < end, pos < end && text.charAt(pos) != '\n');
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        if (metrics != null) {
+            metrics.onInsert(text.length(), System.nanoTime() - start);
+        }
+    }
+
+    // Moves the n cells in spillChars/spillStyles, pushed out of `row`, to the start of the row
+    // that continues it, opening a continuation row if there is none. Cascades while the cells
+    // pushed out of each continuation are not blank.
+    private void spill(int row, int n) {
+        char[] chars = spillChars;
+        short[] styles = spillStyles;
+        String[] clusters = spillClusters;
+        char[] carryChars = spillCarryChars;
+        short[] carryStyles = spillCarryStyles;
+        String[] carryClusters = spillCarryClusters;
+
+        while (!Line.isBlank(chars, styles, n)) {
+            if (!screenLine(row).wrapped || row == height - 1) {
+                // Marked before the row below opens: on a one-row screen opening it scrolls this
+                // row into the scrollback.
+                editLine(row).wrapped = true;
+                row = openRowBelow(row);
+            }
+            row++;
+
+            Line next = editLine(row);
+            next.shiftRight(0, n, carryChars, carryStyles, carryClusters);
+            next.putCells(chars, styles, clusters, n);
+            touch(row, 0, width);
+
+            char[] swapChars = chars;
+            chars = carryChars;
+            carryChars = swapChars;
+            short[] swapStyles = styles;
+            styles = carryStyles;
+            carryStyles = swapStyles;
+            String[] swapClusters = clusters;
+            clusters = carryClusters;
+            carryClusters = swapClusters;
+        }
+    }
+
+    // Makes the row below `row` a blank row and returns the new index of `row`. Rows below move
+    // down if the bottom row is blank; otherwise the rows above move up into the scrollback.
+    private int openRowBelow(int row) {
+        if (row == height - 1 || !screenLine(height - 1).isBlank()) {
+            scrollUp();
+            row--;
+            cursorRow = Math.max(0, cursorRow - 1);
+        }
+
+        Line blank = screenLine(height - 1);
+        for (int r = height - 1; r > row + 1; r--) {
+            screen.set(pendingLines + r, screenLine(r - 1));
+            touch(r, 0, width);
+        }
+        screen.set(pendingLines + row + 1, blank);
+        touch(row + 1, 0, width);
+        return row;
+    }
+
+    // Changes the screen size. Soft-wrapped lines are joined and re-split at the new width, the
+    // cursor stays on the same character, rows pushed off the top go to the scrollback and, when
+    // the screen grows, rows come back from it. Scrollback lines before the first one that needs
+    // re-splitting are not touched, so the cost grows with the scrollback from that line on rather
+    // than with its whole size. Lines already moved to disk keep their old layout.
+    public void resize(int newWidth, int newHeight) {
+        if (newWidth < 1 || newHeight < 1) {
+            throw new IllegalArgumentException("size must be positive: " + newWidth + "x" + newHeight);
+        }
+        if (recorder != null) recorder.record(SessionRecorder.RESIZE, newWidth, newHeight);
+        beginWrite();
+        try {
+            if (newWidth == width && newHeight == height) return;
+            freezePendingLines();
+            scrollbackRewrites++;
+            if (alternate) {
+                // The primary screen is reflowed around its saved cursor. Programs redraw the
+                // alternate one after a resize, so it is only cut or padded.
+                LineStore alternateScreen = screen;
+                int oldWidth = width;
+                int oldHeight = height;
+                int row = cursorRow;
+                int col = cursorCol;
+                screen = inactiveScreen;
+                cursorRow = savedCursorRow;
+                cursorCol = savedCursorCol;
+                reflowScreen(newWidth, newHeight);
+                ensureCursorInBounds();
+                savedCursorRow = cursorRow;
+                savedCursorCol = cursorCol;
+                inactiveScreen = screen;
+                screen = cropped(alternateScreen, oldWidth, oldHeight, newWidth, newHeight);
+                cursorRow = row;
+                cursorCol = col;
+            } else {
+                // A kept alternate screen has the old size; the next switch allocates a new one.
+                if (inactiveScreen != null) {
+                    inactiveScreen.releaseAll();
+                    inactiveScreen = null;
                 }
+                reflowScreen(newWidth, newHeight);
             }
+            ensureCursorInBounds();
+
+            spillChars = new char[newWidth];
+            spillStyles = new short[newWidth];
+            spillClusters = new String[newWidth];
+            spillCarryChars = new char[newWidth];
+            spillCarryStyles = new short[newWidth];
+            spillCarryClusters = new String[newWidth];
+            damage = new Damage(newWidth, newHeight);
+            damage.markAll();
+            spareDamage = new Damage(newWidth, newHeight);
+        } finally {
+            endWrite();
         }
     }
 
+    // Rebuilds `screen` and the scrollback at the new size, moving the cursor with its character.
+    private void reflowScreen(int newWidth, int newHeight) {
+        Reflow reflow = new Reflow(newWidth);
+
+        // The logical line at the top of the screen may begin in the scrollback.
+        int carried = 0;
+        while (carried < frozen.size() && LineCodec.isWrapped(frozen.get(frozen.size() - 1 - carried))) {
+            carried++;
+        }
+        // Scrollback lines before the first one the new width changes stay where they are, with
+        // their line numbers and their place in the search index. The rest are taken off and put
+        // back re-split; they come back under the numbers that follow the kept lines.
+        int kept = 0;
+        while (kept < frozen.size() - carried && !LineCodec.isWrapped(frozen.get(kept))
+                && LineCodec.storedLength(frozen.get(kept)) <= newWidth) {
+            kept++;
+        }
+        long firstChanged = scrolledOut - scrollbackSize() + diskSize() + kept;
+        byte[][] carriedRecords = new byte[carried][];
+        for (int i = carried - 1; i >= 0; i--) {
+            carriedRecords[i] = frozen.removeLast();
+        }
+        byte[][] changed = new byte[frozen.size() - kept][];
+        for (int i = changed.length - 1; i >= 0; i--) {
+            changed[i] = frozen.removeLast();
+        }
+        scrolledOut -= carried + changed.length;
+
+        for (int i = 0; i < changed.length; ) {
+            byte[] record = changed[i++];
+            if (!LineCodec.isWrapped(record) && LineCodec.storedLength(record) <= newWidth) {
+                pushScrollback(record);
+                continue;
+            }
+            reflow.clear();
+            reflow.append(record);
+            while (LineCodec.isWrapped(record) && i < changed.length) {
+                record = changed[i++];
+                reflow.append(record);
+            }
+            for (int k = 0; k < reflow.rowCount(); k++) {
+                pushScrollback(LineCodec.freeze(reflow.row(k)));
+            }
+        }
+
+        // Blank rows below the cursor are dropped and added back at the bottom afterwards.
+        int lastRow = cursorRow;
+        for (int row = height - 1; row > cursorRow; row--) {
+            if (!screenLine(row).isBlank() || screenLine(row).wrapped) {
+                lastRow = row;
+                break;
+            }
+        }
+
+        List<Line> rows = new ArrayList<>();
+        int newCursorRow = 0;
+        int newCursorCol = 0;
+        reflow.clear();
+        for (byte[] record : carriedRecords) {
+            reflow.append(record);
+        }
+        for (int row = 0; row <= lastRow; row++) {
+            Line line = screenLine(row);
+            if (row == cursorRow) {
+                reflow.markCursor(cursorCol);
+            }
+            reflow.append(line);
+            if (!line.wrapped || row == lastRow) {
+                if (reflow.hasCursor()) {
+                    newCursorRow = rows.size() + reflow.cursorRow();
+                    newCursorCol = reflow.cursorCol();
+                }
+                for (int k = 0; k < reflow.rowCount(); k++) {
+                    rows.add(reflow.row(k));
+                }
+                reflow.clear();
+            }
+        }
+
+        int excess = rows.size() - newHeight;
+        if (excess > 0) {
+            for (int i = 0; i < excess; i++) {
+                if (scrollbackMax > 0) {
+                    pushScrollback(LineCodec.freeze(rows.get(i)));
+                }
+            }
+            rows = rows.subList(excess, rows.size());
+            newCursorRow -= excess;
+        }
+        while (rows.size() < newHeight && frozen.size() > 0) {
+            Line line = new Line(newWidth);
+            LineCodec.decode(ByteBuffer.wrap(frozen.removeLast()), 0, line);
+            scrolledOut--;
+            rows.add(0, line);
+            newCursorRow++;
+        }
+        index.truncate(Math.min(firstChanged, scrolledOut));
+
+        width = newWidth;
+        height = newHeight;
+        screen.releaseAll();
+        screen = new LineStore(newWidth, newHeight, pool);
+        for (int row = 0; row < newHeight; row++) {
+            screen.append();
+            if (row < rows.size()) {
+                screen.set(row, rows.get(row));
+            }
+            screen.stamp(row, seq);
+        }
+        cursorRow = newCursorRow;
+        cursorCol = newCursorCol;
+    }
+
+    // Copy of the alternate screen at the new size, keeping its top-left part.
+    private LineStore cropped(LineStore from, int oldWidth, int oldHeight, int newWidth, int newHeight) {
+        LineStore to = new LineStore(newWidth, newHeight, pool);
+        int cols = Math.min(oldWidth, newWidth);
+        for (int row = 0; row < newHeight; row++) {
+            to.append();
+            if (row >= oldHeight) continue;
+            Line old = from.get(row);
+            if (old.isBlank()) continue;
+            Line line = to.edit(row);
+            if (cols < oldWidth) {
+                old.breakWide(cols, cols);
+            }
+            System.arraycopy(old.chars, 0, line.chars, 0, cols);
+            System.arraycopy(old.styles, 0, line.styles, 0, cols);
+            for (int col = 0; col < cols; col++) {
+                if ((line.styles[col] & Line.CLUSTER) != 0) line.setCluster(col, old.clusters[col], line.styles[col]);
+            }
+            line.wrapped = old.wrapped && cols == oldWidth;
+            line.version = seq;
+        }
+        from.releaseAll();
+        return to;
+    }
+
     public void fillLine(int row, char ch) {
-        if (row < 0 || row >= height) return;
+        if (recorder != null) recorder.record(SessionRecorder.FILL_LINE, row, ch);
+        beginWrite();
+        try {
+            if (row < 0 || row >= height) return;
 
-        List<Cell> line = screen.get(row);
-        for (int i = 0; i < width; i++) {
-            line.set(i, new Cell(ch, currentAttributes));
+            editLine(row).fill(0, width, ch, currentStyle);
+            touch(row, 0, width);
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void fillLine(int row, int fromCol, int toCol, char ch) {
+        if (recorder != null) recorder.record(SessionRecorder.FILL_RANGE, row, fromCol, toCol, ch);
+        beginWrite();
+        try {
+            if (row < 0 || row >= height) return;
+            fromCol = Math.max(0, fromCol);
+            toCol = Math.min(width, toCol);
+            if (fromCol >= toCol) return;
+
+            Line line = editLine(row);
+            line.breakWide(fromCol, toCol);
+            line.fill(fromCol, toCol, ch, currentStyle);
+            touch(row, fromCol, toCol);
+        } finally {
+            endWrite();
         }
     }
 
     public void insertEmptyLineAtBottom() {
-        scrollUp();
+        if (recorder != null) recorder.record(SessionRecorder.INSERT_EMPTY_LINE);
+        beginWrite();
+        try {
+            scrollUp();
+        } finally {
+            endWrite();
+        }
     }
 
     public void clearScreen() {
-        screen.clear();
-        for (int i = 0; i < height; i++) {
-            screen.add(createEmptyLine());
+        if (recorder != null) recorder.record(SessionRecorder.CLEAR_SCREEN);
+        beginWrite();
+        try {
+            for (int row = 0; row < height; row++) {
+                screen.release(pendingLines + row);
+                screen.stamp(pendingLines + row, seq);
+            }
+            damage.markAll();
+            cursorRow = 0;
+            cursorCol = 0;
+            wrapPendingRow = -1;
+            countClear();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Saves the cursor position and the current attributes for restoreCursor().
+    public void saveCursor() {
+        if (recorder != null) recorder.record(SessionRecorder.SAVE_CURSOR);
+        storeCursor();
+    }
+
+    private void storeCursor() {
+        savedCursorRow = cursorRow;
+        savedCursorCol = cursorCol;
+        savedAttributes = currentAttributes;
+    }
+
+    public void restoreCursor() {
+        if (recorder != null) recorder.record(SessionRecorder.RESTORE_CURSOR);
+        beginWrite();
+        try {
+            loadCursor();
+        } finally {
+            endWrite();
+        }
+    }
+
+    private void loadCursor() {
+        currentAttributes = savedAttributes;
+        currentStyle = savedAttributes.encode();
+        cursorRow = savedCursorRow;
+        cursorCol = savedCursorCol;
+        ensureCursorInBounds();
+    }
+
+    // Switches to a blank alternate screen, saving the cursor and attributes as saveCursor() does.
+    // The primary screen is kept as it is: the switch exchanges the two stores, and the alternate
+    // one is allocated once and cleared on later entries. Rows scrolled off the alternate screen
+    // are dropped rather than added to the scrollback.
+    public void enterAlternateScreen() {
+        if (recorder != null) recorder.record(SessionRecorder.ENTER_ALTERNATE);
+        beginWrite();
+        try {
+            if (alternate) return;
+            freezePendingLines();
+            storeCursor();
+            LineStore next = inactiveScreen;
+            if (next == null) {
+                next = new LineStore(width, height, pool);
+                for (int i = 0; i < height; i++) {
+                    next.append();
+                }
+            }
+            inactiveScreen = screen;
+            screen = next;
+            alternate = true;
+            for (int row = 0; row < height; row++) {
+                screen.release(row);
+                screen.stamp(row, seq);
+            }
+            wrapPendingRow = -1;
+            damage.markAll();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Switches back to the primary screen and restores the cursor and attributes saved on entry.
+    public void exitAlternateScreen() {
+        if (recorder != null) recorder.record(SessionRecorder.EXIT_ALTERNATE);
+        beginWrite();
+        try {
+            if (!alternate) return;
+            LineStore previous = screen;
+            screen = inactiveScreen;
+            inactiveScreen = previous;
+            alternate = false;
+            for (int row = 0; row < height; row++) {
+                screen.stamp(row, seq);
+            }
+            wrapPendingRow = -1;
+            damage.markAll();
+            loadCursor();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Lines scrolled out so far, which numbers the next one to scroll out. See save(out, fromLine).
+    long linesScrolledOut() {
+        return scrolledOut;
+    }
+
+    long scrollbackRewrites() {
+        return scrollbackRewrites;
+    }
+
+    int scrollbackMax() {
+        return scrollbackMax;
+    }
+
+    public boolean isAlternateScreen() {
+        return alternate;
+    }
+
+    // Writes the whole state to `out`: dimensions, cursor, attributes, then the scrollback and the
+    // screen rows as LineCodec records, each behind its length. Scrollback records, including those
+    // on disk, are copied as they are. Call it on the writer thread; the search index, damage and
+    // metrics are not part of the snapshot.
+    //
+    //   int    SNAPSHOT_MAGIC, byte SNAPSHOT_VERSION
+    //   int    width, height, scrollbackMax
+    //   int    cursorRow, cursorCol, wrapPendingRow; short style
+    //   int    savedCursorRow, savedCursorCol; short savedStyle
+    //   byte   flags            SNAPSHOT_OVERFLOW_WRAP, SNAPSHOT_ALTERNATE
+    //   long   scrolledOut
+    //   int    scrollback line count, int how many of them were on disk, then the records, oldest first
+    //   height screen records, then height primary screen records when the alternate screen is shown
+    public void save(WritableByteChannel out) throws IOException {
+        save(out, 0);
+    }
+
+    // As save(), with only the scrollback lines numbered `fromLine` and later, as counted by
+    // linesScrolledOut(). restoreDelta() applies such an image to the buffer it was taken after.
+    void save(WritableByteChannel out, long fromLine) throws IOException {
+        int skip = (int) Math.min(scrollbackSize(), Math.max(0, fromLine - (scrolledOut - scrollbackSize())));
+        ChannelOutput output = new ChannelOutput(out);
+        output.putInt(SNAPSHOT_MAGIC);
+        output.putByte(SNAPSHOT_VERSION);
+        output.putInt(width);
+        output.putInt(height);
+        output.putInt(scrollbackMax);
+        output.putInt(cursorRow);
+        output.putInt(cursorCol);
+        output.putInt(wrapPendingRow);
+        output.putShort(currentStyle);
+        output.putInt(savedCursorRow);
+        output.putInt(savedCursorCol);
+        output.putShort(savedAttributes.encode());
+        output.putByte((insertOverflowWrap ? SNAPSHOT_OVERFLOW_WRAP : 0) | (alternate ? SNAPSHOT_ALTERNATE : 0));
+        output.putLong(scrolledOut);
+        output.putInt(scrollbackSize() - skip);
+        output.putInt(Math.max(0, diskSize() - skip));
+        for (long i = skip; i < diskSize(); i++) {
+            output.putRecord(disk.record(i));
+        }
+        for (int i = Math.max(0, skip - diskSize()); i < frozen.size(); i++) {
+            output.putRecord(frozen.get(i));
+        }
+        // Rows scrolled off during an open batch are frozen here as the batch would freeze them.
+        for (int i = Math.max(0, skip - diskSize() - frozen.size()); i < pendingLines; i++) {
+            output.putRecord(LineCodec.freeze(screen.get(i)));
+        }
+        for (int row = 0; row < height; row++) {
+            output.putRecord(LineCodec.freeze(screenLine(row)));
+        }
+        if (alternate) {
+            for (int row = 0; row < height; row++) {
+                output.putRecord(LineCodec.freeze(inactiveScreen.get(row)));
+            }
+        }
+        output.flush();
+    }
+
+    // Rebuilds a buffer written by save().
+    public static TerminalBuffer restore(ReadableByteChannel in) throws IOException {
+        return restore(in, null, 0, null);
+    }
+
+    // Rebuilds a buffer written by save() whose older scrollback lines go to `disk`, as with the
+    // five-argument constructor. Lines that were on disk go back to disk, if there is room there.
+    public static TerminalBuffer restore(ReadableByteChannel in, MappedScrollback disk, int inMemoryScrollback)
+            throws IOException {
+        return restore(in, disk, inMemoryScrollback, null);
+    }
+
+    private static TerminalBuffer restore(ReadableByteChannel in, MappedScrollback disk, int inMemoryScrollback,
+                                          LinePool pool) throws IOException {
+        ChannelInput input = new ChannelInput(in);
+        readSnapshotHeader(input);
+        int width = input.getInt();
+        int height = input.getInt();
+        int scrollbackMax = input.getInt();
+        TerminalBuffer buffer = new TerminalBuffer(width, height, scrollbackMax, disk,
+                disk == null ? scrollbackMax : inMemoryScrollback, pool);
+        int flags = buffer.readCursor(input);
+        buffer.scrolledOut = input.getLong();
+        int scrollback = input.getInt();
+        int onDisk = input.getInt();
+        int capacity = buffer.frozen.capacity();
+        int toDisk = disk == null ? 0 : Math.max(Math.min(onDisk, scrollbackMax - capacity), scrollback - capacity);
+        for (int i = 0; i < scrollback; i++) {
+            byte[] record = input.getRecord();
+            if (i < toDisk) {
+                buffer.moveToDisk(record);
+            } else {
+                buffer.frozen.append(record);
+            }
+        }
+        buffer.readScreen(input, buffer.screen);
+        if ((flags & SNAPSHOT_ALTERNATE) != 0) {
+            LineStore primary = new LineStore(width, height, pool);
+            for (int i = 0; i < height; i++) {
+                primary.append();
+            }
+            buffer.readScreen(input, primary);
+            buffer.inactiveScreen = primary;
+            buffer.alternate = true;
+        }
+        return buffer;
+    }
+
+    // Applies an image written by save(out, fromLine) to this buffer, which must hold the state it
+    // had when the image was taken with `fromLine` lines scrolled out. The image's scrollback lines
+    // are appended, evicting the oldest as scrolling would, and the rest of the state is replaced.
+    void restoreDelta(ReadableByteChannel in) throws IOException {
+        ChannelInput input = new ChannelInput(in);
+        readSnapshotHeader(input);
+        if (input.getInt() != width || input.getInt() != height || input.getInt() != scrollbackMax) {
+            throw new IOException("snapshot size does not match the buffer");
+        }
+        beginWrite();
+        try {
+            freezePendingLines();
+            int flags = readCursor(input);
+            long lines = input.getLong();
+            int scrollback = input.getInt();
+            input.getInt();
+            scrolledOut = lines - scrollback;
+            index.truncate(scrolledOut);
+            for (int i = 0; i < scrollback; i++) {
+                pushScrollback(input.getRecord());
+            }
+            for (int row = 0; row < height; row++) {
+                screen.release(row);
+            }
+            readScreen(input, screen);
+            if (inactiveScreen != null) {
+                inactiveScreen.releaseAll();
+                inactiveScreen = null;
+            }
+            alternate = (flags & SNAPSHOT_ALTERNATE) != 0;
+            if (alternate) {
+                inactiveScreen = new LineStore(width, height, pool);
+                for (int i = 0; i < height; i++) {
+                    inactiveScreen.append();
+                }
+                readScreen(input, inactiveScreen);
+            }
+            for (int row = 0; row < height; row++) {
+                screen.stamp(row, seq);
+            }
+            damage.markAll();
+        } finally {
+            endWrite();
+        }
+    }
+
+    private static void readSnapshotHeader(ChannelInput input) throws IOException {
+        if (input.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("not a terminal buffer snapshot");
+        }
+        int version = input.getByte();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+    }
+
+    // Reads the cursor, attributes and flags of a snapshot and returns the flags.
+    private int readCursor(ChannelInput input) throws IOException {
+        cursorRow = input.getInt();
+        cursorCol = input.getInt();
+        wrapPendingRow = input.getInt();
+        setAttributes(Attributes.decode(input.getShort()));
+        savedCursorRow = input.getInt();
+        savedCursorCol = input.getInt();
+        savedAttributes = Attributes.decode(input.getShort());
+        int flags = input.getByte();
+        insertOverflowWrap = (flags & SNAPSHOT_OVERFLOW_WRAP) != 0;
+        return flags;
+    }
+
+    // Blank rows stay unallocated.
+    private void readScreen(ChannelInput input, LineStore store) throws IOException {
+        for (int row = 0; row < height; row++) {
+            byte[] record = input.getRecord();
+            if (LineCodec.storedLength(record) > 0 || LineCodec.isWrapped(record)) {
+                LineCodec.decode(ByteBuffer.wrap(record), 0, store.edit(row));
+            }
+        }
+    }
+
+    // Deflated snapshot for SessionManager. Not for buffers with a disk tier or an open batch.
+    byte[] hibernate() {
+        if (disk != null || batchDepth > 0) {
+            throw new IllegalStateException("cannot hibernate a buffer with a disk tier or an open batch");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            save(Channels.newChannel(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static TerminalBuffer revive(byte[] image, LinePool pool) {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(image))) {
+            return restore(Channels.newChannel(in), null, 0, pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        cursorRow = 0;
-        cursorCol = 0;
     }
 
+    // Gives the screen lines back to the pool. The buffer must not be used afterwards.
+    void release() {
+        screen.releaseAll();
+        if (inactiveScreen != null) {
+            inactiveScreen.releaseAll();
+        }
+    }
+
+    public void clearScrollback() {
+        if (recorder != null) recorder.record(SessionRecorder.CLEAR_SCROLLBACK);
+        beginWrite();
+        try {
+            screen.removeFirst(pendingLines);
+            pendingLines = 0;
+            frozen.clear();
+            index.clear();
+            if (disk != null) {
+                disk.clear();
+            }
+            scrollbackRewrites++;
+            countClear();
+        } finally {
+            endWrite();
+        }
+    }
+
+    private void countClear() {
+        BufferMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onClear();
+        }
+    }
+
+    // Recorded as the two calls it makes.
     public void clearAll() {
-        clearScreen();
-        scrollback.clear();
+        beginWrite();
+        try {
+            clearScreen();
+            clearScrollback();
+        } finally {
+            endWrite();
+        }
     }
 
-    public char getCharAt(int row, int col, boolean fromScrollback) {
-        if (fromScrollback) {
-            if (row < 0 || row >= scrollback.size()) return ' ';
-            return scrollback.get(row).get(col).ch;
+    // Returns the screen changes since the previous call and starts recording a new set. The
+    // returned object is reused and stays valid only until the next call. Writer thread only:
+    // it swaps the set the writer records into, so call it between writes.
+    public Damage collectDamage() {
+        Damage collected = damage;
+        collected.setCursor(collectedCursorRow, collectedCursorCol, cursorRow, cursorCol);
+        collectedCursorRow = cursorRow;
+        collectedCursorCol = cursorCol;
+
+        damage = spareDamage;
+        damage.reset();
+        spareDamage = collected;
+        return collected;
+    }
+
+    // Line `index` of the full content, oldest first. Scrollback lines are decoded into `scratch`,
+    // or into a new line if it is null; screen lines are returned directly.
+    Line storedLine(int index, Line scratch) {
+        int onDisk = diskSize();
+        int inFrozen = index - onDisk;
+        if (inFrozen >= frozen.size()) return screen.get(inFrozen - frozen.size());
+
+        if (scratch == null) scratch = new Line(width);
+        if (inFrozen >= 0) {
+            LineCodec.decode(ByteBuffer.wrap(frozen.get(inFrozen)), 0, scratch);
         } else {
-            if (row < 0 || row >= height) return ' ';
-            return screen.get(row).get(col).ch;
+            disk.read(index, scratch);
         }
+        return scratch;
     }
 
-    public Attributes getAttributesAt(int row, int col, boolean fromScrollback) {
-        if (fromScrollback) {
-            if (row < 0 || row >= scrollback.size()) return null;
-            List<Cell> line = scrollback.get(row);
-            if (col < 0 || col >= line.size()) return null;
-            return line.get(col).attr;
+    // Text of storedLine(index) in `text`. Decodes only the chars of plain in-memory scrollback lines.
+    private RowText storedText(int index, Line scratch, RowText text) {
+        int inFrozen = index - diskSize();
+        if (inFrozen >= 0 && inFrozen < frozen.size() && !LineCodec.isComplex(frozen.get(inFrozen))) {
+            LineCodec.decodeChars(ByteBuffer.wrap(frozen.get(inFrozen)), 0, scratch.chars);
+            text.setPlain(scratch.chars);
         } else {
-            if (row < 0 || row >= height) return null;
-            List<Cell> line = screen.get(row);
-            if (col < 0 || col >= line.size()) return null;
-            return line.get(col).attr;
+            text.set(storedLine(index, scratch));
         }
+        return text;
     }
 
-    public String getLine(int row, boolean fromScrollback) {
-        List<Cell> line;
+    int storedLineCount() {
+        return scrollbackSize() + height;
+    }
+
+    // Stored record of scrollback row `row`, in memory or on disk, or null if the row is not one.
+    // Rows scrolled out inside a batch are still lines until the batch ends and have no record.
+    private ByteBuffer recordAt(int row, boolean fromScrollback) {
+        if (!fromScrollback || row < 0 || row >= scrollbackSize()) return null;
+        int index = row - diskSize();
+        if (index >= frozen.size()) return null;
+        return index >= 0 ? ByteBuffer.wrap(frozen.get(index)) : disk.record(row);
+    }
+
+    private char charAt(int row, int col, boolean fromScrollback) {
+        ByteBuffer record = recordAt(row, fromScrollback);
+        if (record != null) {
+            Objects.checkIndex(col, width);
+            return LineCodec.charAt(record, 0, col);
+        }
+        Line line = lineAt(row, fromScrollback);
+        return line == null ? ' ' : line.chars[col];
+    }
+
+    // Style code at the position, or -1 if it is out of range.
+    private short styleAt(int row, int col, boolean fromScrollback) {
+        ByteBuffer record = recordAt(row, fromScrollback);
+        if (record != null) {
+            return col < 0 || col >= width ? -1 : LineCodec.styleAt(record, 0, col);
+        }
+        Line line = lineAt(row, fromScrollback);
+        return line == null || col < 0 || col >= line.width() ? -1 : line.styles[col];
+    }
+
+    private Line lineAt(int row, boolean fromScrollback) {
+        return lineAt(row, fromScrollback, null);
+    }
 
+    // Scrollback rows are decoded into `scratch`, or into a new line if it is null.
+    private Line lineAt(int row, boolean fromScrollback, Line scratch) {
         if (fromScrollback) {
-            if (row < 0 || row >= scrollback.size()) return "";
-            line = scrollback.get(row);
+            if (row < 0 || row >= scrollbackSize()) return null;
+            return storedLine(row, scratch);
         } else {
-            if (row < 0 || row >= height) return "";
-            line = screen.get(row);
+            if (row < 0 || row >= height) return null;
+            return screenLine(row);
+        }
+    }
+
+    public char getCharAt(int row, int col, boolean fromScrollback) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                char ch = charAt(row, col, fromScrollback);
+                if (validate(stamp)) {
+                    countAccess(1);
+                    return ch;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
+
+    public Attributes getAttributesAt(int row, int col, boolean fromScrollback) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                short style = styleAt(row, col, fromScrollback);
+                if (validate(stamp)) {
+                    countAccess(0);
+                    return style < 0 ? null : Attributes.decode(style);
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
+
+    // Whole text of the cell: a character outside the BMP or with combining marks comes back
+    // complete, where getCharAt() gives only its first char. The second cell of a wide character
+    // is "", and positions out of range are too.
+    public String getGraphemeAt(int row, int col, boolean fromScrollback) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                Line line = lineAt(row, fromScrollback);
+                String text = line == null || col < 0 || col >= line.width() ? "" : line.textAt(col);
+                if (validate(stamp)) {
+                    countAccess(text.length());
+                    return text;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
+
+    public Cell getCellAt(int row, int col, boolean fromScrollback) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                short style = styleAt(row, col, fromScrollback);
+                Cell cell = style < 0 ? null : new Cell(charAt(row, col, fromScrollback), style);
+                if (validate(stamp)) {
+                    countAccess(cell == null ? 0 : 1);
+                    return cell;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
         }
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (Cell c : line) {
-            sb.append(c.ch);
+    public String getLine(int row, boolean fromScrollback) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                Line line = lineAt(row, fromScrollback);
+                String text = line == null ? "" : line.text();
+                if (validate(stamp)) {
+                    countAccess(text.length());
+                    return text;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
         }
-        return sb.toString();
     }
 
     public String getScreenContent() {
-        StringBuilder sb = new StringBuilder();
-        for (List<Cell> line : screen) {
-            for (Cell c : line) {
-                sb.append(c.ch);
+        while (true) {
+            long stamp = beginRead();
+            try {
+                StringBuilder sb = new StringBuilder(height * (width + 1));
+                for (int row = 0; row < height; row++) {
+                    Line line = screenLine(row);
+                    Line.appendText(sb, line.chars, line.styles, line.clusters, width);
+                    sb.append('\n');
+                }
+                if (validate(stamp)) {
+                    countAccess(sb.length());
+                    return sb.toString();
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
             }
-            sb.append('\n');
         }
-        return sb.toString();
     }
 
     public String getFullContent() {
-        StringBuilder sb = new StringBuilder();
+        String content = history().toString();
+        countAccess(content.length());
+        return content;
+    }
+
+    // Immutable copy of the scrollback and screen for bulk work on any thread. Scrollback records
+    // are shared rather than copied, so capturing costs a reference per line plus the screen.
+    public HistorySnapshot history() {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                HistorySnapshot history = captureHistory();
+                if (validate(stamp)) return history;
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
+
+    private HistorySnapshot captureHistory() {
+        int inMemory = frozen.size();
+        int stored = screen.size();
+        byte[][] records = new byte[inMemory + stored][];
+        for (int i = 0; i < inMemory; i++) {
+            records[i] = frozen.get(i);
+        }
+        for (int i = 0; i < stored; i++) {
+            records[inMemory + i] = LineCodec.freeze(screen.get(i));
+        }
+        return new HistorySnapshot(width, disk == null ? null : disk.view(), records);
+    }
+
+    // Search within single rows of the scrollback and screen, starting at (fromRow, fromCol) in
+    // contentView() rows. findNext returns the first match starting at or after the position,
+    // findPrevious the last one starting before it, or null. Literal searches of three or more
+    // chars skip the scrollback blocks that the trigram index rules out. Call from the writer thread.
+    public SearchHit findNext(String text, int fromRow, int fromCol) {
+        return find(TextMatcher.literal(text), fromRow, fromCol, true);
+    }
+
+    public SearchHit findPrevious(String text, int fromRow, int fromCol) {
+        return find(TextMatcher.literal(text), fromRow, fromCol, false);
+    }
+
+    public SearchHit findNext(Pattern pattern, int fromRow, int fromCol) {
+        return find(TextMatcher.regex(pattern), fromRow, fromCol, true);
+    }
+
+    public SearchHit findPrevious(Pattern pattern, int fromRow, int fromCol) {
+        return find(TextMatcher.regex(pattern), fromRow, fromCol, false);
+    }
+
+    // The rows the search reads count as one content access of their chars, so the metrics show
+    // how many rows the index let it skip.
+    private SearchHit find(TextMatcher matcher, int fromRow, int fromCol, boolean forward) {
+        int[] trigrams = matcher.trigrams();
+        int scrollback = scrollbackSize();
+        int count = scrollback + height;
+        long firstLine = scrolledOut - scrollback;
+        Line scratch = new Line(width);
+        RowText text = new RowText();
+        if (trigrams != null) {
+            updateIndex(scratch, text);
+        }
+
+        SearchHit hit = null;
+        int rowsRead = 0;
+        if (forward) {
+            for (int row = Math.max(0, fromRow), col = fromRow < 0 ? 0 : fromCol; row < count; row++, col = 0) {
+                long line = firstLine + row;
+                if (row < scrollback && trigrams != null && !index.blockMayContain(line, trigrams)) {
+                    long blockEnd = line - line % SearchIndex.BLOCK_LINES + SearchIndex.BLOCK_LINES;
+                    row = (int) Math.min(blockEnd - firstLine, scrollback) - 1;
+                    continue;
+                }
+                storedText(row, scratch, text);
+                rowsRead++;
+                int at = matcher.find(text.chars, text.index(col));
+                if (at >= 0) {
+                    hit = hit(row, text, at, matcher.matchEnd);
+                    break;
+                }
+            }
+        } else {
+            int before = fromRow >= count ? Integer.MAX_VALUE : fromCol;
+            for (int row = Math.min(fromRow, count - 1); row >= 0; row--, before = Integer.MAX_VALUE) {
+                long line = firstLine + row;
+                if (row < scrollback && trigrams != null && !index.blockMayContain(line, trigrams)) {
+                    row = (int) Math.max(line - line % SearchIndex.BLOCK_LINES - firstLine, 0);
+                    continue;
+                }
+                storedText(row, scratch, text);
+                rowsRead++;
+                int at = matcher.findLast(text.chars, text.index(before));
+                if (at >= 0) {
+                    hit = hit(row, text, at, matcher.matchEnd);
+                    break;
+                }
+            }
+        }
+        countAccess(rowsRead * width);
+        return hit;
+    }
+
+    // Match of text indices [start, end) as cells.
+    static SearchHit hit(int row, RowText text, int start, int end) {
+        int col = text.column(start);
+        return new SearchHit(row, col, text.column(end) - col);
+    }
+
+    // Indexes the scrollback lines that arrived since the last indexed search, so writing itself
+    // does not pay for the index.
+    private void updateIndex(Line scratch, RowText text) {
+        long firstLine = scrolledOut - scrollbackSize();
+        for (long line = Math.max(index.end(), firstLine); line < scrolledOut; line++) {
+            char[] chars = storedText((int) (line - firstLine), scratch, text).chars;
+            int length = chars.length;
+            while (length > 0 && chars[length - 1] == ' ') {
+                length--;
+            }
+            // Every trigram starting past the text is three blanks, so one of them is enough.
+            index.add(line, chars, Math.min(chars.length, length + 3));
+        }
+    }
+
+    public ScreenSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    // Captures the screen and cursor. Rows that have not changed since `previous` share its copies,
+    // so the cost is proportional to the rows modified in between.
+    public ScreenSnapshot snapshot(ScreenSnapshot previous) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                ScreenSnapshot snapshot = captureScreen(previous, stamp);
+                if (validate(stamp)) return snapshot;
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
+
+    private ScreenSnapshot captureScreen(ScreenSnapshot previous, long stamp) {
+        boolean reuse = previous != null && previous.getWidth() == width && previous.getHeight() == height;
+        Line[] sources = new Line[height];
+        long[] versions = new long[height];
+        char[][] chars = new char[height][];
+        short[][] styles = new short[height][];
+        String[][] clusters = new String[height][];
+        boolean[] changed = new boolean[height];
+
+        for (int row = 0; row < height; row++) {
+            Line line = screenLine(row);
+            long version = line.version;
+            sources[row] = line;
+            versions[row] = version;
+            if (reuse && previous.sources[row] == line && previous.versions[row] == version) {
+                chars[row] = previous.chars[row];
+                styles[row] = previous.styles[row];
+                clusters[row] = previous.clusters[row];
+            } else {
+                chars[row] = line.chars.clone();
+                styles[row] = line.styles.clone();
+                clusters[row] = line.clusters == null ? null : line.clusters.clone();
+                changed[row] = true;
+            }
+        }
+        return new ScreenSnapshot(width, height, cursorRow, cursorCol, stamp,
+                sources, versions, chars, styles, clusters, changed);
+    }
+
+    public int getScrollbackSize() {
+        return scrollbackSize();
+    }
 
-        for (List<Cell> line : scrollback) {
-            for (Cell c : line) {
-                sb.append(c.ch);
+    // Copies the line into dst at offset and returns the number of chars copied, or 0 if the row
+    // is out of range. Like getCharAt(), this gives one char per cell; getLine(int, boolean) and
+    // getGraphemeAt() return the full text of wide characters and clusters.
+    public int getLine(int row, boolean fromScrollback, char[] dst, int offset) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                int n = getLineChars(row, fromScrollback, dst, offset);
+                if (validate(stamp)) {
+                    countAccess(n);
+                    return n;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
             }
-            sb.append('\n');
         }
+    }
 
-        sb.append(getScreenContent());
+    private int getLineChars(int row, boolean fromScrollback, char[] dst, int offset) {
+        if (row < 0 || row >= (fromScrollback ? scrollbackSize() : height)) return 0;
+        Objects.checkFromIndexSize(offset, width, dst.length);
+        // Only the chars are needed, so scrollback records are decoded straight into `dst`.
+        ByteBuffer record = recordAt(row, fromScrollback);
+        if (record != null) {
+            LineCodec.decodeChars(record, 0, dst, offset, width);
+        } else {
+            System.arraycopy(lineAt(row, fromScrollback).chars, 0, dst, offset, width);
+        }
+        return width;
+    }
 
-        return sb.toString();
+    public void appendLine(int row, boolean fromScrollback, Appendable out) throws IOException {
+        Line line = readRow(row, true, fromScrollback, null);
+        if (line == null) return;
+        appendText(out, line);
+        countAccess(line.width());
     }
 
+    // The append methods read each row in one consistent read, so other threads may call them
+    // while the writer works; rows appended later may then show later writes. history() gives a
+    // view of the whole content at one point in time.
+    public void appendScreenContent(Appendable out) throws IOException {
+        appendRows(true, out);
+    }
+
+    public void appendFullContent(Appendable out) throws IOException {
+        appendRows(false, out);
+    }
+
+    // Appends the screen rows, or every stored line, until the buffer has no next row.
+    private void appendRows(boolean screenOnly, Appendable out) throws IOException {
+        // One line to copy or decode every row into.
+        Line scratch = null;
+        int chars = 0;
+        for (int i = 0; ; i++) {
+            scratch = readRow(i, screenOnly, false, scratch);
+            if (scratch == null) break;
+            appendText(out, scratch);
+            out.append('\n');
+            chars += scratch.width() + 1;
+        }
+        countAccess(chars);
+    }
+
+    private static void appendText(Appendable out, Line line) throws IOException {
+        if (Line.isPlain(line.styles, line.width())) {
+            append(out, line.chars, 0, line.width());
+        } else {
+            out.append(line.text());
+        }
+    }
+
+    private static void append(Appendable out, char[] chars, int offset, int length) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, offset, length);
+        } else if (out instanceof CharBuffer) {
+            ((CharBuffer) out).put(chars, offset, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, offset, length);
+        } else {
+            out.append(CharBuffer.wrap(chars, offset, length));
+        }
+    }
+
+    // Read-only view of the line backed directly by the buffer storage. It reflects later edits
+    // to the same row and should not be kept across scrolling. Scrollback lines are returned as copies.
+    // Writer thread only, like contentView(): the views read the storage without retrying.
+    public CharSequence lineView(int row, boolean fromScrollback) {
+        Line line = lineAt(row, fromScrollback);
+        if (line == null) return "";
+        return CharBuffer.wrap(line.chars).asReadOnlyBuffer();
+    }
+
+    // View over rows [fromRow, toRow) of the full content, where row 0 is the oldest scrollback
+    // line and the screen follows the scrollback. Each row is terminated by '\n'. Reads rows as it
+    // goes, so use it on the writer thread; other threads use appendFullContent() or history().
+    public CharSequence contentView(int fromRow, int toRow) {
+        Objects.checkFromToIndex(fromRow, toRow, storedLineCount());
+        return new ContentView(this, fromRow, toRow - fromRow, width);
+    }
+
+    // Starts `runs` on rows [fromRow, toRow) in contentView() numbering and returns it; see StyleRuns.
+    public StyleRuns styleRuns(int fromRow, int toRow, StyleRuns runs) {
+        Objects.checkFromToIndex(fromRow, toRow, storedLineCount());
+        runs.start(this, fromRow, toRow);
+        return runs;
+    }
+
+    // Copy of stored line `index` taken in one consistent read, or null once the buffer has fewer
+    // lines. `into` is reused while it has the buffer's width.
+    Line copyRow(int index, Line into) {
+        Line copy = readRow(index, false, false, into);
+        if (copy != null) countAccess(copy.width());
+        return copy;
+    }
+
+    // Copy of a row taken in one consistent read, or null if the buffer does not have the row.
+    // With `relative` the row is numbered within the scrollback or the screen, as `fromScrollback`
+    // says; otherwise it is a stored line index, as in contentView().
+    private Line readRow(int row, boolean relative, boolean fromScrollback, Line into) {
+        while (true) {
+            long stamp = beginRead();
+            try {
+                Line copy = into != null && into.width() == width ? into : new Line(width);
+                Line line = relative ? lineAt(row, fromScrollback, copy)
+                        : row < storedLineCount() ? storedLine(row, copy) : null;
+                if (line != null && line != copy) {
+                    System.arraycopy(line.chars, 0, copy.chars, 0, width);
+                    System.arraycopy(line.styles, 0, copy.styles, 0, width);
+                    if (line.clusters != null) {
+                        if (copy.clusters == null) copy.clusters = new String[width];
+                        System.arraycopy(line.clusters, 0, copy.clusters, 0, width);
+                    }
+                    copy.wrapped = line.wrapped;
+                }
+                if (validate(stamp)) return line == null ? null : copy;
+            } catch (RuntimeException e) {
+                if (validate(stamp)) throw e;
+            }
+        }
+    }
 }
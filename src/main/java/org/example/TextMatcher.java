@@ -0,0 +1,107 @@
+package org.example;
+
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Finds matches within a single row of chars. After a successful find, matchEnd is the end column
+// of the match.
+abstract class TextMatcher {
+    int matchEnd;
+
+    // First match starting at or after `from`, or -1.
+    abstract int find(char[] chars, int from);
+
+    // Last match starting before `before`, or -1.
+    abstract int findLast(char[] chars, int before);
+
+    // Trigram hashes every matching row must contain, or null if the index cannot be used.
+    abstract int[] trigrams();
+
+    static TextMatcher literal(String text) {
+        return new Literal(text);
+    }
+
+    static TextMatcher regex(Pattern pattern) {
+        return new Regex(pattern);
+    }
+
+    private static final class Literal extends TextMatcher {
+        private final char[] text;
+        private final int[] trigrams;
+
+        Literal(String text) {
+            if (text.isEmpty()) throw new IllegalArgumentException("empty search text");
+            this.text = text.toCharArray();
+            this.trigrams = SearchIndex.trigrams(text);
+        }
+
+        @Override
+        int find(char[] chars, int from) {
+            for (int i = Math.max(0, from); i <= chars.length - text.length; i++) {
+                if (matchesAt(chars, i)) {
+                    matchEnd = i + text.length;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int findLast(char[] chars, int before) {
+            for (int i = Math.min(before - 1, chars.length - text.length); i >= 0; i--) {
+                if (matchesAt(chars, i)) {
+                    matchEnd = i + text.length;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matchesAt(char[] chars, int at) {
+            for (int j = 0; j < text.length; j++) {
+                if (chars[at + j] != text[j]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        int[] trigrams() {
+            return trigrams;
+        }
+    }
+
+    private static final class Regex extends TextMatcher {
+        private final Matcher matcher;
+
+        Regex(Pattern pattern) {
+            this.matcher = pattern.matcher("");
+        }
+
+        @Override
+        int find(char[] chars, int from) {
+            matcher.reset(CharBuffer.wrap(chars));
+            if (from > chars.length || !matcher.find(Math.max(0, from))) return -1;
+            matchEnd = matcher.end();
+            return matcher.start();
+        }
+
+        @Override
+        int findLast(char[] chars, int before) {
+            matcher.reset(CharBuffer.wrap(chars));
+            int start = -1;
+            int end = -1;
+            while (matcher.find() && matcher.start() < before) {
+                start = matcher.start();
+                end = matcher.end();
+            }
+            matchEnd = end;
+            return start;
+        }
+
+        @Override
+        int[] trigrams() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import org.example.AnsiParser;
+import org.example.Attributes;
+import org.example.Color;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnsiParserTest {
+
+    @Test
+    @DisplayName("write() should pass plain text through to the buffer")
+    void plainTextShouldBeWritten() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 10);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("HELLO\r\nWORLD");
+
+        assertEquals("HELLO \nWORLD \n", buffer.getScreenContent());
+    }
+
+    @Test
+    @DisplayName("A full row followed by CR LF should not leave a blank row, on any row")
+    void fullRowsShouldNotBeDoubleSpaced() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 4, 10);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("abcd\r\nefgh\r\nij\r\n");
+
+        assertEquals("abcd\nefgh\nij  \n    \n", buffer.getScreenContent());
+        assertEquals(3, buffer.getCursorRow());
+
+        // The same on the bottom row, where the scroll is left pending, and with a bare LF.
+        parser.write("klmn\r\nopqr\nst\rS");
+        assertEquals("abcd\nefgh\n", buffer.getFullContent().substring(0, 10));
+        assertEquals("ij  \nklmn\nopqr\nSt  \n", buffer.getScreenContent());
+
+        // CR after a full row returns to the start of that row.
+        parser.write("\r\nuvwx\rU");
+        assertEquals("Uvwx", buffer.getLine(3, false));
+    }
+
+    @Test
+    @DisplayName("SGR sequences should map onto colors and style flags")
+    void sgrShouldSetAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 1, 0);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("\u001b[1;31;44mA\u001b[22;3;4;92mB\u001b[0mC\u001b[38;5;13;48;2;1;2;3mD");
+
+        Attributes a = buffer.getAttributesAt(0, 0, false);
+        assertEquals(Color.RED, a.fg);
+        assertEquals(Color.BLUE, a.bg);
+        assertTrue(a.bold);
+
+        Attributes b = buffer.getAttributesAt(0, 1, false);
+        assertEquals(Color.BRIGHT_GREEN, b.fg);
+        assertEquals(Color.BLUE, b.bg);
+        assertFalse(b.bold);
+        assertTrue(b.italic);
+        assertTrue(b.underline);
+
+        Attributes c = buffer.getAttributesAt(0, 2, false);
+        assertEquals(Color.DEFAULT, c.fg);
+        assertEquals(Color.DEFAULT, c.bg);
+        assertFalse(c.italic);
+
+        Attributes d = buffer.getAttributesAt(0, 3, false);
+        assertEquals(Color.BRIGHT_MAGENTA, d.fg);
+        assertEquals(Color.DEFAULT, d.bg);
+        assertEquals("ABCD  ", buffer.getLine(0, false));
+    }
+
+    @Test
+    @DisplayName("cursor sequences should move the buffer cursor")
+    void cursorSequencesShouldMoveCursor() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("\u001b[3;4H");
+        assertEquals(2, buffer.getCursorRow());
+        assertEquals(3, buffer.getCursorCol());
+
+        parser.write("\u001b[A\u001b[2C");
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(5, buffer.getCursorCol());
+
+        parser.write("\u001b[3B\u001b[10D");
+        assertEquals(4, buffer.getCursorRow());
+        assertEquals(0, buffer.getCursorCol());
+
+        parser.write("\u001b[H");
+        assertEquals(0, buffer.getCursorRow());
+        assertEquals(0, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("ED and EL sequences should erase parts of the screen")
+    void eraseSequencesShouldClear() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 10);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("ABCD\u001b[2;1HEFGH\u001b[3;1HIJKL");
+        parser.write("\u001b[2;3H\u001b[K");
+        assertEquals("ABCD\nEF  \nIJKL\n", buffer.getScreenContent());
+
+        parser.write("\u001b[1K");
+        assertEquals("ABCD\n    \nIJKL\n", buffer.getScreenContent());
+
+        parser.write("\u001b[J");
+        assertEquals("ABCD\n    \n    \n", buffer.getScreenContent());
+
+        parser.write("\u001b[2J");
+        assertEquals("    \n    \n    \n", buffer.getScreenContent());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(2, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("sequences split across writes and unsupported sequences should not print")
+    void splitAndUnsupportedSequencesShouldBeConsumed() {
+        TerminalBuffer buffer = new TerminalBuffer(8, 1, 0);
+        AnsiParser parser = new AnsiParser(buffer);
+
+        parser.write("a\u001b");
+        parser.write("[3");
+        parser.write("1mb\u001b]0;title\u0007c\u001b[?25ld\u001bP1$r\u001b\\e");
+
+        assertEquals("abcde   ", buffer.getLine(0, false));
+        assertEquals(Color.RED, buffer.getAttributesAt(0, 1, false).fg);
+    }
+
+    @Test
+    @DisplayName("CSI ? 1049 h/l should switch to the alternate screen and back")
+    void privateMode1049ShouldSwitchScreens() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        AnsiParser parser = new AnsiParser(buffer);
+        parser.write("ab\r\n\u001b[31mc");
+
+        parser.write("\u001b[?1049h\u001b[0mx\r\ny\r\nz");
+
+        assertTrue(buffer.isAlternateScreen());
+        assertEquals("y   \nz   \n", buffer.getScreenContent());
+        assertEquals(0, buffer.getScrollbackSize());
+
+        parser.write("\u001b[?1049ld");
+
+        assertFalse(buffer.isAlternateScreen());
+        assertEquals("ab  \ncd  \n", buffer.getScreenContent());
+        assertEquals(Color.RED, buffer.getAttributesAt(1, 1, false).fg);
+    }
+}
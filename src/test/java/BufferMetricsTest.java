@@ -0,0 +1,88 @@
+import org.example.BufferMetrics;
+import org.example.Histogram;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferMetricsTest {
+
+    @Test
+    @DisplayName("BufferMetrics should count writes, scrolls, evictions and clears")
+    void metricsShouldCountWriterActivity() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 3);
+        BufferMetrics metrics = new BufferMetrics();
+        buffer.setMetrics(metrics);
+
+        buffer.write("a\nb\nc\nd\ne\nf");
+        buffer.insert("xy");
+        buffer.clearAll();
+
+        assertEquals(1, metrics.getWriteCalls());
+        assertEquals(1, metrics.getInsertCalls());
+        assertEquals(13, metrics.getCharsWritten());
+        assertEquals(4, metrics.getLinesScrolled());
+        assertEquals(1, metrics.getEvictions());
+        assertEquals(2, metrics.getClears());
+        assertEquals(2, metrics.getWriteChunkSizes().getCount());
+        assertEquals(11, metrics.getWriteChunkMax());
+
+        metrics.reset();
+        assertEquals(0, metrics.getCharsWritten());
+        assertEquals(0, metrics.getWriteChunkSizes().getCount());
+    }
+
+    @Test
+    @DisplayName("BufferMetrics should count content access calls and the chars they return")
+    void metricsShouldCountContentAccess() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.write("ab");
+
+        buffer.getLine(0, false);
+        BufferMetrics metrics = new BufferMetrics();
+        buffer.setMetrics(metrics);
+
+        buffer.getCharAt(0, 0, false);
+        buffer.getLine(0, false);
+        buffer.getScreenContent();
+
+        assertEquals(3, metrics.getContentAccessCalls());
+        assertEquals(1 + 4 + 10, metrics.getContentAccessChars());
+
+        buffer.setMetrics(null);
+        buffer.getScreenContent();
+        assertEquals(3, metrics.getContentAccessCalls());
+    }
+
+    @Test
+    @DisplayName("BufferMetrics should report percentiles and be readable over JMX")
+    void metricsShouldBeExposedOverJmx() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(80, 24, 100);
+        BufferMetrics metrics = new BufferMetrics();
+        buffer.setMetrics(metrics);
+        for (int i = 0; i < 99; i++) {
+            buffer.write("x");
+        }
+        buffer.write("y".repeat(1000));
+
+        Histogram chunks = metrics.getWriteChunkSizes();
+        assertEquals(100, chunks.getCount());
+        assertEquals(1, chunks.getPercentile(50));
+        assertEquals(1, chunks.getPercentile(99));
+        assertEquals(1000, chunks.getPercentile(100));
+
+        ObjectName name = metrics.register("metrics-test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1099L, server.getAttribute(name, "CharsWritten"));
+            assertEquals(1000L, server.getAttribute(name, "WriteChunkMax"));
+        } finally {
+            BufferMetrics.unregister(name);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.example.ByteIngest;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteIngestTest {
+
+    @Test
+    @DisplayName("feed() should decode multi-byte sequences split across calls")
+    void feedShouldJoinSplitSequences() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 10);
+        ByteIngest ingest = new ByteIngest(buffer);
+
+        byte[] bytes = "añ€b".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            ingest.feed(ByteBuffer.wrap(new byte[] { b }));
+        }
+
+        assertEquals("añ€b  ", buffer.getLine(0, false));
+        assertEquals(4, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("feed() should decode input larger than the internal buffers")
+    void feedShouldHandleLargeInput() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 1000);
+        ByteIngest ingest = new ByteIngest(buffer, 7);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("ü").append(i % 10).append('\n');
+        }
+        ingest.feed(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("ü0        ", buffer.getLine(0, true));
+        assertEquals("ü9        ", buffer.getLine(1, false));
+    }
+
+    @Test
+    @DisplayName("transferFrom() should read a channel to the end and flush incomplete input")
+    void transferFromShouldReadWholeChannel() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 10);
+        ByteIngest ingest = new ByteIngest(buffer);
+
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = { 'o', 'k', euro[0], euro[1] };
+        long read = ingest.transferFrom(Channels.newChannel(new ByteArrayInputStream(bytes)));
+
+        assertEquals(4, read);
+        assertEquals("ok�   ", buffer.getLine(0, false));
+    }
+
+    @Test
+    @DisplayName("feed() should give the same screen however the input is split")
+    void feedShouldNotDependOnSplits() {
+        String text = "row one wraps\nnäive 中文 text at the margin\n".repeat(20);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        TerminalBuffer whole = new TerminalBuffer(4, 3, 1000);
+        whole.write(text);
+
+        TerminalBuffer split = new TerminalBuffer(4, 3, 1000);
+        ByteIngest ingest = new ByteIngest(split, 5);
+        for (int i = 0; i < bytes.length; i += 3) {
+            ingest.feed(ByteBuffer.wrap(bytes, i, Math.min(3, bytes.length - i)));
+        }
+
+        assertEquals(whole.getFullContent(), split.getFullContent());
+    }
+}
@@ -0,0 +1,140 @@
+import org.example.ScreenSnapshot;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentReadTest {
+
+    @Test
+    @DisplayName("snapshot() should share unchanged rows with the previous snapshot")
+    void snapshotShouldReuseUnchangedRows() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 10);
+        buffer.write("HELLO");
+
+        ScreenSnapshot first = buffer.snapshot();
+        assertTrue(first.isRowChanged(0));
+        assertEquals("HELLO", first.getLine(0));
+
+        buffer.setCursor(2, 1);
+        buffer.write("X");
+        ScreenSnapshot second = buffer.snapshot(first);
+
+        assertFalse(second.isRowChanged(0));
+        assertFalse(second.isRowChanged(1));
+        assertTrue(second.isRowChanged(2));
+        assertEquals(" X   ", second.getLine(2));
+        assertEquals(2, second.getCursorRow());
+        assertEquals(2, second.getCursorCol());
+        assertEquals("     ", first.getLine(2));
+
+        buffer.write("\n");
+        ScreenSnapshot third = buffer.snapshot(second);
+        assertTrue(third.isRowChanged(0));
+        assertTrue(third.isRowChanged(2));
+        assertEquals("     \n X   \n     \n", third.getScreenContent());
+    }
+
+    @Test
+    @DisplayName("readers should only see complete writes while another thread writes")
+    void readersShouldSeeConsistentScreens() throws Exception {
+        int width = 40;
+        int height = 10;
+        TerminalBuffer buffer = new TerminalBuffer(width, height, 0);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            StringBuilder fill = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                char ch = (char) ('a' + i % 26);
+                fill.setLength(0);
+                for (int j = 0; j < width * height; j++) fill.append(ch);
+                buffer.setCursor(0, 0);
+                buffer.write(fill);
+            }
+            done.set(true);
+        });
+
+        Thread reader = new Thread(() -> {
+            ScreenSnapshot previous = null;
+            while (!done.get() && failure.get() == null) {
+                ScreenSnapshot snapshot = buffer.snapshot(previous);
+                String screen = snapshot.getScreenContent().replace("\n", "");
+                if (screen.chars().distinct().count() != 1) {
+                    failure.set("torn snapshot: " + screen);
+                }
+                String content = buffer.getScreenContent().replace("\n", "");
+                if (content.chars().distinct().count() != 1) {
+                    failure.set("torn screen content: " + content);
+                }
+                previous = snapshot;
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    @DisplayName("appended content and char[] rows should not tear while another thread scrolls and resizes")
+    void appendedRowsShouldBeConsistent() throws Exception {
+        TerminalBuffer buffer = new TerminalBuffer(64, 4, 20);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                if (i % 1000 == 999) buffer.resize(i % 2000 == 999 ? 48 : 64, 4);
+                // Rewrite each row in place with one letter, then scroll now and then.
+                String fill = String.valueOf((char) ('a' + i % 26)).repeat(buffer.getWidth());
+                for (int r = 0; r < 4; r++) {
+                    buffer.setCursor(r, 0);
+                    buffer.write(fill);
+                }
+                if (i % 10 == 9) buffer.write("\n");
+            }
+            done.set(true);
+        });
+
+        Thread reader = new Thread(() -> {
+            StringBuilder out = new StringBuilder();
+            char[] row = new char[64];
+            try {
+                while (!done.get() && failure.get() == null) {
+                    out.setLength(0);
+                    buffer.appendFullContent(out);
+                    buffer.appendScreenContent(out);
+                    for (int r = 0; r < 4; r++) {
+                        out.append('\n');
+                        buffer.appendLine(r, false, out);
+                        int n = buffer.getLine(r, false, row, 0);
+                        out.append('\n').append(row, 0, n);
+                    }
+                    for (String line : out.toString().split("\n")) {
+                        if (line.replace(" ", "").chars().distinct().count() > 1) {
+                            failure.set("torn row: " + line);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                failure.set(e.toString());
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,75 @@
+import org.example.HistorySnapshot;
+import org.example.SearchHit;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistorySnapshotTest {
+
+    @Test
+    @DisplayName("parallelSearch() should return every match in row order")
+    void parallelSearchShouldMergeInRowOrder() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 4, 100_000);
+        for (int i = 0; i < 20_000; i++) {
+            buffer.write("row " + i + (i % 1000 == 7 ? " hit hit" : "") + "\n");
+        }
+        HistorySnapshot history = buffer.history();
+
+        List<SearchHit> hits = history.parallelSearch(Pattern.compile("hit"));
+        assertEquals(40, hits.size());
+        assertEquals(7, hits.get(0).getRow());
+        assertEquals(6, hits.get(0).getCol());
+        assertEquals(10, hits.get(1).getCol());
+        assertEquals(19_007, hits.get(39).getRow());
+        for (int i = 2; i < hits.size(); i += 2) {
+            assertTrue(hits.get(i).getRow() > hits.get(i - 1).getRow());
+        }
+        assertEquals(40, history.countMatches(Pattern.compile("hit")));
+    }
+
+    @Test
+    @DisplayName("A history snapshot should not change while the writer continues")
+    void historyShouldStayStable() {
+        TerminalBuffer buffer = new TerminalBuffer(8, 2, 3);
+        buffer.write("a\nb\nc\nd");
+        HistorySnapshot history = buffer.history();
+        String before = history.toString();
+
+        buffer.write("\ne\nf\ng");
+        buffer.clearScrollback();
+
+        assertEquals(before, history.toString());
+        assertEquals(4, history.getLineCount());
+        assertEquals("a       ", history.getLine(0));
+        assertEquals("d       ", history.getLine(3));
+    }
+
+    @Test
+    @DisplayName("lines() and export() should match getFullContent()")
+    void linesAndExportShouldMatchFullContent(@TempDir Path tempDir) throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(20, 4, 100_000);
+        for (int i = 0; i < 30_000; i++) {
+            buffer.write("row " + i + "\n");
+        }
+        HistorySnapshot history = buffer.history();
+        String full = buffer.getFullContent();
+
+        assertEquals(full, history.toString());
+        assertEquals(full, history.lines().parallel().map(line -> line + "\n").collect(Collectors.joining()));
+
+        Path file = tempDir.resolve("history.txt");
+        history.export(file);
+        assertEquals(full, Files.readString(file, StandardCharsets.UTF_8));
+    }
+}
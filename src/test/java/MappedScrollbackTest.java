@@ -0,0 +1,97 @@
+import org.example.Attributes;
+import org.example.Color;
+import org.example.MappedScrollback;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedScrollbackTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Lines moved to disk should read back with their text and attributes")
+    void diskLinesShouldReadBack() throws IOException {
+        try (MappedScrollback disk = new MappedScrollback(tempDir)) {
+            TerminalBuffer buffer = new TerminalBuffer(6, 2, 100, disk, 3);
+            buffer.setAttributes(Color.RED, Color.DEFAULT, true, false, false);
+            buffer.write("L0\nL1\nL2\nL3\nL4\nL5\nL6\nL7");
+            buffer.setAttributes(Attributes.DEFAULT);
+
+            assertEquals(6, buffer.getScrollbackSize());
+            for (int i = 0; i < 6; i++) {
+                assertEquals("L" + i + "    ", buffer.getLine(i, true));
+            }
+            assertEquals(Color.RED, buffer.getAttributesAt(0, 1, true).fg);
+            assertTrue(buffer.getAttributesAt(0, 1, true).bold);
+            assertEquals(Color.DEFAULT, buffer.getAttributesAt(0, 2, true).fg);
+            assertEquals("L6    \nL7    \n", buffer.getScreenContent());
+            assertEquals("L0    \nL1    \nL2    \n", buffer.contentView(0, 3).toString());
+            assertTrue(buffer.getFullContent().startsWith("L0    \nL1    \n"));
+        }
+    }
+
+    @Test
+    @DisplayName("Disk scrollback should still respect scrollbackMax")
+    void diskScrollbackShouldRespectLimit() throws IOException {
+        try (MappedScrollback disk = new MappedScrollback(tempDir)) {
+            TerminalBuffer buffer = new TerminalBuffer(4, 1, 5, disk, 2);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                text.append(i).append('\n');
+            }
+            buffer.write(text);
+
+            assertEquals(5, buffer.getScrollbackSize());
+            assertEquals("15  ", buffer.getLine(0, true));
+            assertEquals("19  ", buffer.getLine(4, true));
+
+            buffer.clearScrollback();
+            assertEquals(0, buffer.getScrollbackSize());
+        }
+    }
+
+    @Test
+    @DisplayName("close() should delete the segment files")
+    void closeShouldDeleteFiles() throws IOException {
+        MappedScrollback disk = new MappedScrollback(tempDir);
+        TerminalBuffer buffer = new TerminalBuffer(4, 1, 100, disk, 1);
+        buffer.write("a\nb\nc\nd");
+        assertEquals("a   ", buffer.getLine(0, true));
+        disk.close();
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("save() should include the lines on disk and restore() should move old lines to disk")
+    void snapshotShouldCoverDiskLines() throws IOException {
+        Path file = tempDir.resolve("snapshot");
+        try (MappedScrollback disk = new MappedScrollback(tempDir);
+             FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            TerminalBuffer buffer = new TerminalBuffer(4, 1, 100, disk, 2);
+            buffer.write("a\nb\nc\nd\ne");
+            buffer.save(out);
+        }
+        try (MappedScrollback disk = new MappedScrollback(tempDir);
+             FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            TerminalBuffer restored = TerminalBuffer.restore(in, disk, 1);
+
+            assertEquals(4, restored.getScrollbackSize());
+            assertEquals("a   \nb   \nc   \nd   \ne   \n", restored.getFullContent());
+        }
+    }
+}
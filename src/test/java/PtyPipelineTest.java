@@ -0,0 +1,201 @@
+import org.example.AnsiParser;
+import org.example.PtyPipeline;
+import org.example.PtyStream;
+import org.example.ScreenSnapshot;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PtyPipelineTest {
+
+    private static void write(Pipe.SinkChannel sink, String text) throws Exception {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            sink.write(bytes);
+        }
+    }
+
+    @Test
+    @DisplayName("Everything written to the ptys should reach their buffers in order")
+    void pipelineShouldApplyEveryStream() throws Exception {
+        try (PtyPipeline pipeline = new PtyPipeline(2, 2, 64)) {
+            Pipe[] pipes = new Pipe[3];
+            PtyStream[] streams = new PtyStream[3];
+            for (int i = 0; i < 3; i++) {
+                pipes[i] = Pipe.open();
+                TerminalBuffer buffer = new TerminalBuffer(10, 3, 100);
+                streams[i] = pipeline.attach(pipes[i].source(), buffer, new AnsiParser(buffer), null,
+                        PtyPipeline.RenderPolicy.LATEST);
+            }
+            TerminalBuffer expected = new TerminalBuffer(10, 3, 100);
+            AnsiParser parser = new AnsiParser(expected);
+            long bytes = 0;
+            for (int line = 0; line < 50; line++) {
+                String text = "\u001b[31ml" + line + " 中\u001b[0m\r\n";
+                parser.write(text.toCharArray(), 0, text.length());
+                bytes += text.getBytes(StandardCharsets.UTF_8).length;
+                for (int i = 0; i < 3; i++) {
+                    write(pipes[i].sink(), text);
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                pipes[i].sink().close();
+                assertTrue(streams[i].awaitEnd(10, TimeUnit.SECONDS));
+                TerminalBuffer buffer = streams[i].getBuffer();
+                assertEquals(expected.getFullContent(), buffer.getFullContent());
+                assertEquals(expected.getAttributesAt(0, 0, false).fg, buffer.getAttributesAt(0, 0, false).fg);
+                assertEquals(bytes, streams[i].getBytesRead());
+                assertEquals(streams[i].getUpdateCount(), streams[i].getLatencyNanos().getCount());
+            }
+            assertEquals(0, pipeline.getStreamCount());
+        }
+    }
+
+    @Test
+    @DisplayName("A renderer that cannot keep up should throttle the reader of its pty")
+    void slowRendererShouldThrottleReader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (PtyPipeline pipeline = new PtyPipeline(1, 2, 16)) {
+            Pipe pipe = Pipe.open();
+            TerminalBuffer buffer = new TerminalBuffer(16, 4, 10);
+            PtyStream stream = pipeline.attach(pipe.source(), buffer, buffer, snapshot -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, PtyPipeline.RenderPolicy.EVERY_UPDATE);
+
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10_000; i++) {
+                        write(pipe.sink(), "0123456789abcdef");
+                    }
+                    pipe.sink().close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+            Thread.sleep(300);
+            // The pipe and the queue are full and the producer is stuck in write().
+            assertTrue(producer.isAlive());
+            assertTrue(stream.getThrottleCount() > 0);
+            assertTrue(stream.getBytesRead() < 160_000);
+
+            release.countDown();
+            producer.join(10_000);
+            assertTrue(stream.awaitEnd(10, TimeUnit.SECONDS));
+            assertEquals(160_000, stream.getBytesRead());
+        }
+    }
+
+    @Test
+    @DisplayName("The latest policy should drop renders a slow renderer misses but end on the final screen")
+    void latestPolicyShouldDropToLatest() throws Exception {
+        AtomicInteger renders = new AtomicInteger();
+        ScreenSnapshot[] last = new ScreenSnapshot[1];
+        try (PtyPipeline pipeline = new PtyPipeline(2, 4, 8)) {
+            Pipe pipe = Pipe.open();
+            TerminalBuffer buffer = new TerminalBuffer(8, 2, 0);
+            PtyStream stream = pipeline.attach(pipe.source(), buffer, new AnsiParser(buffer), snapshot -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                last[0] = snapshot;
+                renders.incrementAndGet();
+            }, PtyPipeline.RenderPolicy.LATEST);
+
+            for (int i = 0; i < 200; i++) {
+                write(pipe.sink(), "\r" + (i % 10) + "      ");
+                Thread.sleep(1);
+            }
+            write(pipe.sink(), "\rdone");
+            pipe.sink().close();
+            assertTrue(stream.awaitEnd(10, TimeUnit.SECONDS));
+            // Let the pending render finish.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (renders.get() != stream.getRenderCount() || last[0] == null
+                    || !last[0].getLine(0).startsWith("done")) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            assertTrue(stream.getRenderCount() < stream.getUpdateCount());
+        }
+    }
+
+    @Test
+    @DisplayName("End of input that arrives while a render is running should still end the stream")
+    void endOfInputDuringRenderShouldEndStream() throws Exception {
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (PtyPipeline pipeline = new PtyPipeline(1, 2, 16)) {
+            Pipe pipe = Pipe.open();
+            TerminalBuffer buffer = new TerminalBuffer(16, 4, 10);
+            PtyStream stream = pipeline.attach(pipe.source(), buffer, buffer, snapshot -> {
+                rendering.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, PtyPipeline.RenderPolicy.EVERY_UPDATE);
+
+            write(pipe.sink(), "abc");
+            assertTrue(rendering.await(10, TimeUnit.SECONDS));
+            pipe.sink().close();
+            // Give the reader time to see the end of input while the render still runs.
+            Thread.sleep(200);
+            release.countDown();
+
+            assertTrue(stream.awaitEnd(10, TimeUnit.SECONDS));
+            assertEquals("abc", buffer.getLine(0, false).trim());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pipeline.getStreamCount() != 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A renderer that throws should close its stream instead of stalling the reader")
+    void throwingRendererShouldCloseStream() throws Exception {
+        for (PtyPipeline.RenderPolicy policy : PtyPipeline.RenderPolicy.values()) {
+            try (PtyPipeline pipeline = new PtyPipeline(1, 2, 16)) {
+                Pipe pipe = Pipe.open();
+                TerminalBuffer buffer = new TerminalBuffer(16, 4, 10);
+                PtyStream stream = pipeline.attach(pipe.source(), buffer, buffer, snapshot -> {
+                    throw new IllegalStateException("renderer failed");
+                }, policy);
+
+                write(pipe.sink(), "abc");
+                assertFalse(stream.awaitEnd(10, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, stream.getFailure());
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (pipeline.getStreamCount() != 0) {
+                    assertTrue(System.nanoTime() < deadline);
+                    Thread.sleep(10);
+                }
+                // The pty is closed too, so the program writing to it is not left blocked.
+                assertThrows(IOException.class, () -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        write(pipe.sink(), "0123456789abcdef");
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.example.BufferMetrics;
+import org.example.SearchHit;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTest {
+
+    @Test
+    @DisplayName("findNext() should walk literal matches forward across scrollback and screen")
+    void findNextShouldIterateForward() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 3, 1000);
+        for (int i = 0; i < 200; i++) {
+            buffer.write("line " + i + (i % 50 == 0 ? " marker" : "") + "\n");
+        }
+
+        SearchHit hit = buffer.findNext("marker", 0, 0);
+        assertEquals(0, hit.getRow());
+        assertEquals(7, hit.getCol());
+        assertEquals(6, hit.getLength());
+
+        hit = buffer.findNext("marker", hit.getRow(), hit.getCol() + 1);
+        assertEquals(50, hit.getRow());
+        assertEquals(8, hit.getCol());
+
+        assertEquals(150, buffer.findNext("marker", 101, 0).getRow());
+        assertNull(buffer.findNext("marker", 151, 0));
+        assertEquals(199, buffer.findNext("line 199", 0, 0).getRow());
+    }
+
+    @Test
+    @DisplayName("findPrevious() should return the last match before the position")
+    void findPreviousShouldIterateBackward() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 3, 1000);
+        for (int i = 0; i < 200; i++) {
+            buffer.write("line " + i + (i % 50 == 0 ? " marker" : "") + "\n");
+        }
+        int end = buffer.getScrollbackSize() + buffer.getHeight();
+
+        assertEquals(150, buffer.findPrevious("marker", end, 0).getRow());
+        assertEquals(100, buffer.findPrevious("marker", 150, 9).getRow());
+        assertEquals(150, buffer.findPrevious("marker", 150, 10).getRow());
+        assertNull(buffer.findPrevious("marker", 0, 7));
+    }
+
+    @Test
+    @DisplayName("Regex search should report the match length and honour evicted lines")
+    void regexSearchShouldMatch() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 2, 3);
+        buffer.write("id=17\nid=2048\nx\ny\nid=5\n");
+
+        SearchHit hit = buffer.findNext(Pattern.compile("id=\\d+"), 0, 0);
+        assertEquals(0, hit.getRow());
+        assertEquals(7, hit.getLength());
+
+        hit = buffer.findPrevious(Pattern.compile("id=\\d+"), 5, 0);
+        assertEquals(3, hit.getRow());
+        assertEquals(4, hit.getLength());
+        assertNull(buffer.findNext("id=17", 0, 0));
+    }
+
+    @Test
+    @DisplayName("A literal search should only read the rows of blocks that may contain it")
+    void literalSearchShouldSkipBlocks() {
+        TerminalBuffer buffer = new TerminalBuffer(80, 24, 5000);
+        BufferMetrics metrics = new BufferMetrics();
+        buffer.setMetrics(metrics);
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            // Long rows of varied words, so every block holds about a thousand trigrams.
+            StringBuilder line = new StringBuilder(i == 2500 ? "needle " : "");
+            while (line.length() < 70) {
+                line.append(Integer.toString(random.nextInt(1 << 30), 36)).append(' ');
+            }
+            text.append(line, 0, 70).append('\n');
+        }
+        buffer.write(text);
+
+        metrics.reset();
+        assertEquals(2500, buffer.findNext("needle", 0, 0).getRow());
+        long rowsRead = metrics.getContentAccessChars() / 80;
+        // Without the index it would read all 2501 rows up to the match.
+        assertTrue(rowsRead < 32, "read " + rowsRead + " rows");
+
+        metrics.reset();
+        assertNull(buffer.findNext("haystack", 0, 0));
+        rowsRead = metrics.getContentAccessChars() / 80;
+        // The screen and the block still being filled are always read.
+        assertTrue(rowsRead < 24 + 32, "read " + rowsRead + " rows");
+    }
+}
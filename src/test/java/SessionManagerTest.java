@@ -0,0 +1,85 @@
+import org.example.Attributes;
+import org.example.Color;
+import org.example.Session;
+import org.example.SessionManager;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionManagerTest {
+
+    @Test
+    @DisplayName("A hibernated session should come back with the same content, cursor and attributes")
+    void hibernateShouldRoundTrip() {
+        SessionManager manager = new SessionManager();
+        Session session = manager.open(6, 3, 10);
+        TerminalBuffer buffer = session.acquire();
+        buffer.write("one\ntwo\nthree\nfour\nfive 中");
+        buffer.setAttributes(Color.RED, Color.BLUE, true, false, true);
+        buffer.write("x");
+        buffer.setCursor(1, 4);
+        String content = buffer.getFullContent();
+        Attributes attributes = buffer.getAttributesAt(2, 0, false);
+        session.release();
+
+        assertTrue(session.hibernate());
+        assertTrue(session.isHibernated());
+        assertTrue(session.getImageSize() > 0);
+        assertEquals(1, manager.getHibernatedCount());
+
+        TerminalBuffer revived = session.acquire();
+        assertFalse(session.isHibernated());
+        assertEquals(content, revived.getFullContent());
+        assertEquals(1, revived.getCursorRow());
+        assertEquals(4, revived.getCursorCol());
+        assertEquals(attributes.fg, revived.getAttributesAt(2, 0, false).fg);
+        assertEquals(Color.RED, revived.getAttributes().fg);
+        assertTrue(revived.getAttributes().underline);
+        session.release();
+    }
+
+    @Test
+    @DisplayName("A session on the alternate screen should keep both screens through hibernation")
+    void hibernateShouldKeepAlternateScreen() {
+        SessionManager manager = new SessionManager();
+        Session session = manager.open(4, 2, 5);
+        TerminalBuffer buffer = session.acquire();
+        buffer.write("ab\ncd");
+        buffer.enterAlternateScreen();
+        buffer.write("xy");
+        session.release();
+        session.hibernate();
+
+        buffer = session.acquire();
+        assertTrue(buffer.isAlternateScreen());
+        assertEquals("xy", buffer.getLine(1, false).substring(2, 4));
+        buffer.exitAlternateScreen();
+        assertEquals("ab  \ncd  \n", buffer.getScreenContent());
+        session.release();
+    }
+
+    @Test
+    @DisplayName("hibernateIdle() should skip held sessions and return lines to the pool")
+    void hibernateIdleShouldSkipHeldSessions() {
+        SessionManager manager = new SessionManager();
+        Session idle = manager.open(10, 4, 10);
+        Session held = manager.open(10, 4, 10);
+        idle.acquire().write("a\nb\nc");
+        idle.release();
+        held.acquire().write("d");
+
+        assertEquals(1, manager.hibernateIdle(0, TimeUnit.NANOSECONDS));
+        assertTrue(idle.isHibernated());
+        assertFalse(held.isHibernated());
+        assertEquals(3, manager.getPooledLineCount());
+
+        held.release();
+        held.close();
+        assertEquals(1, manager.getSessionCount());
+        assertThrows(IllegalStateException.class, held::acquire);
+    }
+}
@@ -0,0 +1,158 @@
+import org.example.Color;
+import org.example.SessionPlayer;
+import org.example.SessionRecorder;
+import org.example.TerminalBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final long[] clock = {0};
+
+    private FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Test
+    @DisplayName("seek() should show the buffer as it was at the given time, in either direction")
+    void seekShouldRestoreEarlierStates() throws IOException {
+        Path file = tempDir.resolve("session.rec");
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        try (FileChannel out = create(file);
+             SessionRecorder recorder = new SessionRecorder(buffer, out, 16, () -> clock[0])) {
+            buffer.write("one\n");
+            clock[0] = TimeUnit.SECONDS.toNanos(1);
+            buffer.setAttributes(Color.RED, Color.DEFAULT, true, false, false);
+            buffer.write("two\nthree");
+            clock[0] = TimeUnit.SECONDS.toNanos(2);
+            buffer.clearScreen();
+            buffer.write("four");
+        }
+
+        try (FileChannel in = FileChannel.open(file)) {
+            SessionPlayer player = new SessionPlayer(in);
+            assertEquals(2, player.getDuration(TimeUnit.SECONDS));
+            assertTrue(player.getKeyframeCount() > 1);
+
+            TerminalBuffer at1 = player.seek(1, TimeUnit.SECONDS);
+            assertEquals("one  \ntwo  \nthree\n", at1.getFullContent());
+            assertEquals(Color.RED, at1.getAttributesAt(1, 0, false).fg);
+
+            assertEquals("one  \n     \n", player.seek(500, TimeUnit.MILLISECONDS).getFullContent());
+            assertEquals("one  \nfour \n     \n", player.seek(3, TimeUnit.SECONDS).getFullContent());
+        }
+    }
+
+    @Test
+    @DisplayName("replay() should rebuild the final buffer from every recorded change")
+    void replayShouldMatchRecordedBuffer() throws IOException {
+        Path file = tempDir.resolve("session.rec");
+        TerminalBuffer buffer = new TerminalBuffer(8, 3, 20);
+        try (FileChannel out = create(file);
+             SessionRecorder recorder = new SessionRecorder(buffer, out, 64, () -> clock[0])) {
+            for (int i = 0; i < 50; i++) {
+                clock[0] += 1000;
+                buffer.write("line " + i + "\n");
+                if (i % 10 == 0) {
+                    buffer.resize(8 + i / 10, 3);
+                }
+            }
+            buffer.write("12345678");
+            buffer.carriageReturn();
+            buffer.lineFeed();
+            buffer.enterAlternateScreen();
+            buffer.setCursor(1, 2);
+            buffer.insert("中x");
+        }
+
+        try (FileChannel in = FileChannel.open(file)) {
+            TerminalBuffer replayed = new SessionPlayer(in).replay();
+            assertEquals(buffer.getFullContent(), replayed.getFullContent());
+            assertEquals(buffer.getCursorCol(), replayed.getCursorCol());
+            assertTrue(replayed.isAlternateScreen());
+            replayed.exitAlternateScreen();
+            buffer.exitAlternateScreen();
+            assertEquals(buffer.getFullContent(), replayed.getFullContent());
+            assertEquals(buffer.getCursorRow(), replayed.getCursorRow());
+        }
+    }
+
+    @Test
+    @DisplayName("Keyframes should grow with the new lines, not with the whole scrollback")
+    void keyframesShouldStayBoundedAsHistoryGrows() throws IOException {
+        Path file = tempDir.resolve("session.rec");
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 1000);
+        int[] checked = {100, 2999, 999, 1000, 1700, 2500, 40};
+        Map<Integer, String> expected = new HashMap<>();
+        try (FileChannel out = create(file);
+             SessionRecorder recorder = new SessionRecorder(buffer, out, 256, () -> clock[0])) {
+            for (int i = 0; i < 3000; i++) {
+                clock[0] += TimeUnit.MILLISECONDS.toNanos(1);
+                buffer.write("line " + i + "\n");
+                expected.put(i, buffer.getFullContent());
+            }
+        }
+
+        // Chunks follow the 5-byte header: byte type, long first time, long last time, int length.
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+        log.position(5);
+        long eventBytes = 0;
+        long keyframeBytes = 0;
+        while (log.hasRemaining()) {
+            int type = log.get();
+            log.position(log.position() + 16);
+            int length = log.getInt();
+            if (type == 1) {
+                eventBytes += length;
+            } else {
+                keyframeBytes += length;
+            }
+            log.position(log.position() + length);
+        }
+        assertTrue(keyframeBytes < 4 * eventBytes, keyframeBytes + " keyframe bytes for " + eventBytes);
+
+        try (FileChannel in = FileChannel.open(file)) {
+            SessionPlayer player = new SessionPlayer(in);
+            assertTrue(player.getKeyframeCount() > 100);
+            for (int i : checked) {
+                assertEquals(expected.get(i), player.seek(i + 1, TimeUnit.MILLISECONDS).getFullContent());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A recording cut short should still open up to its last complete chunk")
+    void truncatedRecordingShouldOpen() throws IOException {
+        Path file = tempDir.resolve("session.rec");
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        try (FileChannel out = create(file);
+             SessionRecorder recorder = new SessionRecorder(buffer, out)) {
+            buffer.write("abc");
+            recorder.flush();
+            buffer.write("def");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        try (FileChannel in = FileChannel.open(file)) {
+            assertEquals("abc  \n     \n", new SessionPlayer(in).replay().getFullContent());
+        }
+    }
+}
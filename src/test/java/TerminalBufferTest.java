@@ -1,9 +1,23 @@
 import org.example.Attributes;
+import org.example.Cell;
 import org.example.Color;
+import org.example.Damage;
+import org.example.SearchHit;
+import org.example.StyleRuns;
 import org.example.TerminalBuffer;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TerminalBufferTest {
@@ -159,6 +173,27 @@ class TerminalBufferTest {
         assertEquals("789", buffer.getLine(1, false));
     }
 
+    @Test
+    @DisplayName("write() overloads should produce the same content and cursor")
+    void writeOverloadsShouldMatch() {
+        String text = "ab\ncdefghij\n\nklmnopqrstu\nvw";
+        char[] padded = ("##" + text + "##").toCharArray();
+
+        TerminalBuffer fromString = new TerminalBuffer(4, 3, 10);
+        TerminalBuffer fromBuilder = new TerminalBuffer(4, 3, 10);
+        TerminalBuffer fromArray = new TerminalBuffer(4, 3, 10);
+
+        fromString.write(text);
+        fromBuilder.write(new StringBuilder(text));
+        fromArray.write(padded, 2, text.length());
+
+        assertEquals(fromString.getFullContent(), fromBuilder.getFullContent());
+        assertEquals(fromString.getFullContent(), fromArray.getFullContent());
+        assertEquals(fromString.getCursorRow(), fromArray.getCursorRow());
+        assertEquals(fromString.getCursorCol(), fromArray.getCursorCol());
+        assertEquals("ab  \ncdef\nghij\n    \n    \nklmn\nopqr\nstu \nvw  \n", fromString.getFullContent());
+    }
+
     @Test
     @DisplayName("insert() should shift characters to the right from cursor position")
     void insertShouldShiftCharactersRight() {
@@ -194,6 +229,60 @@ class TerminalBufferTest {
         assertEquals("DE ", buffer.getLine(1, false));
     }
 
+    @Test
+    @DisplayName("insert() of several characters should shift the tail once and drop the overflow")
+    void insertRunShouldShiftTail() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 10);
+
+        buffer.write("HELLO");
+        buffer.setCursor(0, 1);
+        buffer.insert("XYZ");
+
+        assertEquals("HXYZE", buffer.getLine(0, false));
+        assertEquals("     ", buffer.getLine(1, false));
+        assertEquals(4, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("insert() with overflow wrap should move pushed-out cells to a continuation row")
+    void insertWithOverflowWrapShouldSpill() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 10);
+        buffer.setInsertOverflowWrap(true);
+
+        buffer.write("HELLO");
+        buffer.setCursor(1, 0);
+        buffer.write("WORLD");
+        buffer.setCursor(0, 1);
+        buffer.insert("XY");
+
+        assertEquals("HXYEL\nLO   \nWORLD\n", buffer.getScreenContent());
+
+        buffer.setCursor(0, 0);
+        buffer.insert("AB");
+
+        assertEquals("ABHXY\nELLO \nWORLD\n", buffer.getScreenContent());
+        assertEquals(0, buffer.getCursorRow());
+        assertEquals(2, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("insert() with overflow wrap should scroll when the screen is full")
+    void insertWithOverflowWrapShouldScrollWhenFull() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.setInsertOverflowWrap(true);
+
+        buffer.write("ABC");
+        buffer.setCursor(1, 0);
+        buffer.write("DEF");
+        buffer.setCursor(1, 0);
+        buffer.insert("X");
+
+        assertEquals("ABC", buffer.getLine(0, true));
+        assertEquals("XDE\nF  \n", buffer.getScreenContent());
+        assertEquals(0, buffer.getCursorRow());
+        assertEquals(1, buffer.getCursorCol());
+    }
+
     @Test
     @DisplayName("insertEmptyLineAtBottom() should scroll top line into scrollback and add empty line at bottom")
     void insertEmptyLineAtBottomShouldScroll() {
@@ -242,6 +331,36 @@ class TerminalBufferTest {
         assertEquals("456", buffer.getLine(0, true));
     }
 
+    @Test
+    @DisplayName("scrollUp() should keep scrollback order after the store wraps around")
+    void scrollbackShouldKeepOrderAfterWrapAround() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 100);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(String.format("%04d", i));
+        }
+        buffer.write(text.toString());
+
+        assertEquals("0898", buffer.getLine(0, true));
+        assertEquals("0997", buffer.getLine(99, true));
+        assertEquals("", buffer.getLine(100, true));
+        assertEquals("0998", buffer.getLine(0, false));
+        assertEquals("0999", buffer.getLine(1, false));
+    }
+
+    @Test
+    @DisplayName("scrollUp() should not keep any scrollback when scrollbackMax is zero")
+    void scrollbackShouldStayEmptyWhenMaxIsZero() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 0);
+
+        buffer.write("123456789");
+
+        assertEquals("", buffer.getLine(0, true));
+        assertEquals("456", buffer.getLine(0, false));
+        assertEquals("789", buffer.getLine(1, false));
+    }
+
     @Test
     @DisplayName("clearScreen() should clear visible screen but keep scrollback")
     void clearScreenShouldResetScreenOnly() {
@@ -344,6 +463,61 @@ class TerminalBufferTest {
         assertFalse(attr.underline);
     }
 
+    @Test
+    @DisplayName("getAttributesAt() should keep every color and style combination")
+    void getAttributesShouldRoundTripAllCombinations() {
+        TerminalBuffer buffer = new TerminalBuffer(8, 1, 0);
+
+        for (Color fg : Color.values()) {
+            for (Color bg : Color.values()) {
+                for (int flags = 0; flags < 8; flags++) {
+                    buffer.setCursor(0, 0);
+                    buffer.setAttributes(fg, bg, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+                    buffer.write("A");
+
+                    Attributes attr = buffer.getAttributesAt(0, 0, false);
+                    assertEquals(fg, attr.fg);
+                    assertEquals(bg, attr.bg);
+                    assertEquals((flags & 1) != 0, attr.bold);
+                    assertEquals((flags & 2) != 0, attr.italic);
+                    assertEquals((flags & 4) != 0, attr.underline);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("getAttributesAt() should return the shared instance for a style")
+    void getAttributesShouldReturnSharedInstance() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+
+        buffer.setAttributes(Color.CYAN, Color.BLACK, false, true, false);
+        buffer.write("AB");
+
+        Attributes expected = Attributes.of(Color.CYAN, Color.BLACK, false, true, false);
+        assertSame(expected, buffer.getAttributesAt(0, 0, false));
+        assertSame(expected, buffer.getAttributesAt(0, 1, false));
+        assertSame(expected, buffer.getAttributes());
+        assertSame(Attributes.DEFAULT, buffer.getAttributesAt(0, 2, false));
+    }
+
+    @Test
+    @DisplayName("getCellAt() should return character and attributes of a cell")
+    void getCellAtShouldReturnCell() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+
+        buffer.setAttributes(Color.GREEN, Color.DEFAULT, false, true, true);
+        buffer.write("AB");
+
+        Cell cell = buffer.getCellAt(0, 1, false);
+
+        assertEquals('B', cell.ch);
+        assertEquals(Color.GREEN, cell.attr.fg);
+        assertTrue(cell.attr.italic);
+        assertTrue(cell.attr.underline);
+        assertNull(buffer.getCellAt(0, 5, false));
+    }
+
     @Test
     @DisplayName("getAttributesAt() should return null for out-of-bounds indices")
     void getAttributesOutOfBounds() {
@@ -402,7 +576,534 @@ class TerminalBufferTest {
         String expected = "   \n   \n";
         assertEquals(expected, buffer.getFullContent());
     }
-}
 
+    @Test
+    @DisplayName("collectDamage() should report written column spans and reset")
+    void collectDamageShouldReportWrittenSpans() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        buffer.collectDamage();
+
+        buffer.setCursor(1, 2);
+        buffer.write("abc");
+        buffer.fillLine(2, 5, 7, '-');
+
+        Damage damage = buffer.collectDamage();
+
+        assertFalse(damage.isRowDirty(0));
+        assertTrue(damage.isRowDirty(1));
+        assertEquals(2, damage.getDirtyFrom(1));
+        assertEquals(5, damage.getDirtyTo(1));
+        assertEquals(5, damage.getDirtyFrom(2));
+        assertEquals(7, damage.getDirtyTo(2));
+        assertEquals(2, damage.getDirtyRowCount());
+        assertEquals(1, damage.nextDirtyRow(0));
+        assertEquals(0, damage.getScrollDelta());
+        assertTrue(damage.isCursorMoved());
+        assertEquals(1, damage.getCursorRow());
+        assertEquals(5, damage.getCursorCol());
+
+        assertTrue(buffer.collectDamage().isEmpty());
+    }
+
+    @Test
+    @DisplayName("collectDamage() should count scrolled lines and shift dirty rows with them")
+    void collectDamageShouldTrackScrolling() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 3, 10);
+        buffer.collectDamage();
+
+        buffer.setCursor(2, 0);
+        buffer.write("ab\ncd");
+
+        Damage damage = buffer.collectDamage();
+
+        assertEquals(1, damage.getScrollDelta());
+        assertFalse(damage.isRowDirty(0));
+        assertTrue(damage.isRowDirty(1));
+        assertEquals(0, damage.getDirtyFrom(1));
+        assertEquals(2, damage.getDirtyTo(1));
+        assertTrue(damage.isRowDirty(2));
+        assertEquals(0, damage.getDirtyFrom(2));
+        assertEquals(3, damage.getDirtyTo(2));
+    }
+
+    @Test
+    @DisplayName("collectDamage() should mark the whole screen after clearScreen()")
+    void collectDamageShouldMarkAllAfterClear() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.collectDamage();
+
+        buffer.clearScreen();
+
+        Damage damage = buffer.collectDamage();
+        assertEquals(2, damage.getDirtyRowCount());
+        assertEquals(0, damage.getDirtyFrom(1));
+        assertEquals(4, damage.getDirtyTo(1));
+    }
+
+    @Test
+    @DisplayName("appendFullContent() and appendScreenContent() should match the String getters")
+    void appendContentShouldMatchGetters() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.write("123456789");
+
+        StringBuilder full = new StringBuilder();
+        buffer.appendFullContent(full);
+        assertEquals(buffer.getFullContent(), full.toString());
+
+        StringWriter screen = new StringWriter();
+        buffer.appendScreenContent(screen);
+        assertEquals(buffer.getScreenContent(), screen.toString());
+
+        CharBuffer line = CharBuffer.allocate(3);
+        buffer.appendLine(0, true, line);
+        assertEquals("123", line.flip().toString());
+    }
+
+    @Test
+    @DisplayName("getLine() into a char array should copy the row at the given offset")
+    void getLineIntoArrayShouldCopyRow() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.write("123456789");
+
+        char[] dst = new char[5];
+        assertEquals(3, buffer.getLine(1, false, dst, 2));
+        assertEquals("789", new String(dst, 2, 3));
+        assertEquals(0, buffer.getLine(5, true, dst, 0));
+    }
+
+    @Test
+    @DisplayName("lineView() and contentView() should read the buffer without copying")
+    void viewsShouldReadStorage() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.write("123456789");
+
+        CharSequence line = buffer.lineView(0, false);
+        assertEquals("456", line.toString());
+        buffer.setCursor(0, 0);
+        buffer.write("X");
+        assertEquals('X', line.charAt(0));
+
+        CharSequence content = buffer.contentView(0, 3);
+        assertEquals("123\nX56\n789\n", content.toString());
+        assertEquals(12, content.length());
+        assertEquals('\n', content.charAt(3));
+        assertEquals("3\nX5", content.subSequence(2, 6).toString());
+        assertEquals("56\n7", content.subSequence(5, 9).toString());
+    }
+
+    @Test
+    @DisplayName("Scrollback lines should keep their chars, styles and trailing styled blanks")
+    void scrollbackShouldPreserveCells() {
+        TerminalBuffer buffer = new TerminalBuffer(8, 1, 10);
+        buffer.write("ab");
+        buffer.setAttributes(Color.GREEN, Color.BLUE, false, true, false);
+        buffer.write("\u03bb ");
+        buffer.setAttributes(Attributes.DEFAULT);
+        buffer.write("c\n");
+
+        assertEquals(1, buffer.getScrollbackSize());
+        assertEquals("ab\u03bb c   ", buffer.getLine(0, true));
+        assertEquals('\u03bb', buffer.getCharAt(0, 2, true));
+        assertEquals(' ', buffer.getCharAt(0, 7, true));
+        assertEquals(Color.DEFAULT, buffer.getAttributesAt(0, 1, true).fg);
+        assertEquals(Color.GREEN, buffer.getAttributesAt(0, 3, true).fg);
+        assertTrue(buffer.getAttributesAt(0, 3, true).italic);
+        assertEquals(Attributes.DEFAULT, buffer.getAttributesAt(0, 4, true));
+        assertEquals(Attributes.DEFAULT, buffer.getAttributesAt(0, 7, true));
+        assertNull(buffer.getAttributesAt(0, 8, true));
+        assertEquals('c', buffer.getCellAt(0, 4, true).ch);
+    }
+
+    @Test
+    @DisplayName("resize() to a wider screen should join soft-wrapped rows and keep the cursor")
+    void resizeWiderShouldJoinWrappedRows() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 4, 10);
+        buffer.setAttributes(Color.RED, Color.DEFAULT, false, false, false);
+        buffer.write("abcdefgh");
+        buffer.setAttributes(Attributes.DEFAULT);
+        buffer.write("\nxy");
+
+        buffer.resize(10, 3);
+
+        assertEquals(10, buffer.getWidth());
+        assertEquals(3, buffer.getHeight());
+        assertEquals("abcdefgh  \nxy        \n          \n", buffer.getScreenContent());
+        assertEquals(Color.RED, buffer.getAttributesAt(0, 7, false).fg);
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(2, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("resize() to a narrower screen should split rows into the scrollback")
+    void resizeNarrowerShouldSplitRows() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        buffer.write("abcdefgh\nxyz");
+        buffer.setCursor(1, 1);
+
+        buffer.resize(4, 2);
+
+        assertEquals(1, buffer.getScrollbackSize());
+        assertEquals("abcd", buffer.getLine(0, true));
+        assertEquals("efgh\nxyz \n", buffer.getScreenContent());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(1, buffer.getCursorCol());
+
+        buffer.resize(10, 2);
+        assertEquals(0, buffer.getScrollbackSize());
+        assertEquals("abcdefgh  \nxyz       \n", buffer.getScreenContent());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(1, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("resize() to a taller screen should bring rows back from the scrollback")
+    void resizeTallerShouldPullScrollback() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.write("1\n2\n3\n4");
+
+        buffer.resize(3, 4);
+
+        assertEquals(0, buffer.getScrollbackSize());
+        assertEquals("1  \n2  \n3  \n4  \n", buffer.getScreenContent());
+        assertEquals(3, buffer.getCursorRow());
+        assertEquals(1, buffer.getCursorCol());
+    }
+
+    // The count of lines scrolled out so far, read from the save() layout.
+    private static long scrolledOut(TerminalBuffer buffer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buffer.save(Channels.newChannel(bytes));
+        return ByteBuffer.wrap(bytes.toByteArray()).getLong(42);
+    }
+
+    @Test
+    @DisplayName("resize() should only renumber the scrollback lines it re-splits")
+    void resizeShouldKeepScrolledOutCount() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 50);
+        for (int i = 0; i < 20; i++) {
+            buffer.write("s" + i + "\n");
+        }
+        buffer.write("abcdefghijklmnopqrst\nzzz\nx\ny");
+        String content = buffer.getFullContent();
+        long scrolledOut = scrolledOut(buffer);
+        long firstLine = scrolledOut - buffer.getScrollbackSize();
+
+        for (int round = 0; round < 5; round++) {
+            buffer.resize(5, 2);
+            // The long line now takes four rows, so the lines from it on moved down by two.
+            assertEquals(firstLine, scrolledOut(buffer) - buffer.getScrollbackSize());
+            assertEquals(scrolledOut + 2, scrolledOut(buffer));
+            assertEquals(17, buffer.findNext("s17", 0, 0).getRow());
+            assertEquals(25, buffer.findNext("zzz", 0, 0).getRow());
+
+            buffer.resize(10, 2);
+            assertEquals(scrolledOut, scrolledOut(buffer));
+            assertEquals(content, buffer.getFullContent());
+            assertEquals(23, buffer.findNext("zzz", 0, 0).getRow());
+        }
+
+        // Rows brought back to the screen are no longer counted as scrolled out.
+        buffer.resize(10, 6);
+        assertEquals(scrolledOut - 4, scrolledOut(buffer));
+        buffer.resize(10, 2);
+        assertEquals(scrolledOut, scrolledOut(buffer));
+        assertEquals(23, buffer.findNext("zzz", 0, 0).getRow());
+    }
+
+    @Test
+    @DisplayName("beginBatch()/endBatch() should produce the same content as unbatched writes")
+    void batchShouldMatchUnbatchedWrites() {
+        TerminalBuffer batched = new TerminalBuffer(4, 2, 5);
+        TerminalBuffer plain = new TerminalBuffer(4, 2, 5);
+
+        batched.beginBatch();
+        for (int i = 0; i < 20; i++) {
+            batched.write("l" + i + "\n");
+            plain.write("l" + i + "\n");
+            assertEquals(plain.getScrollbackSize(), batched.getScrollbackSize());
+            assertEquals(plain.getLine(0, true), batched.getLine(0, true));
+        }
+        batched.endBatch();
+
+        assertEquals(5, batched.getScrollbackSize());
+        assertEquals("l14 ", batched.getLine(0, true));
+        assertEquals(plain.getFullContent(), batched.getFullContent());
+        assertThrows(IllegalStateException.class, batched::endBatch);
+    }
+
+    @Test
+    @DisplayName("collectDamage() should report the scrolling of a batch as one delta")
+    void collectDamageShouldCoalesceBatchScrolling() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 3, 10);
+        buffer.collectDamage();
+
+        buffer.beginBatch();
+        buffer.write("a\nb\nc\nd\ne\nf");
+        buffer.endBatch();
+
+        Damage damage = buffer.collectDamage();
+
+        assertEquals(3, damage.getScrollDelta());
+        assertEquals(3, damage.getDirtyRowCount());
+        assertEquals(0, damage.getDirtyFrom(0));
+        assertEquals(3, damage.getDirtyTo(0));
+        assertEquals("d  \ne  \nf  \n", buffer.getScreenContent());
+    }
+
+    @Test
+    @DisplayName("write() should give East Asian wide characters two cells")
+    void writeShouldGiveWideCharactersTwoCells() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 0);
+
+        buffer.write("a\u4e2d\u6587");
 
+        assertEquals("a\u4e2d\u6587 ", buffer.getLine(0, false));
+        assertEquals(5, buffer.getCursorCol());
+        assertEquals("\u4e2d", buffer.getGraphemeAt(0, 1, false));
+        assertEquals("", buffer.getGraphemeAt(0, 2, false));
+        assertEquals("\u6587", buffer.getGraphemeAt(0, 3, false));
+    }
+
+    @Test
+    @DisplayName("write() should move a wide character that does not fit to the next row")
+    void writeShouldWrapWideCharacterAtLastColumn() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 0);
+
+        buffer.write("abc\u4e2dd");
+
+        assertEquals("abc ", buffer.getLine(0, false));
+        assertEquals("\u4e2dd ", buffer.getLine(1, false));
+        assertEquals(3, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("write() should keep characters outside the BMP and combining marks in one cell")
+    void writeShouldKeepClustersInOneCell() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 5);
+        String emoji = "\uD83D\uDE00";
+        String accented = "e\u0301";
+
+        buffer.write(emoji + accented + "x");
+
+        assertEquals(emoji, buffer.getGraphemeAt(0, 0, false));
+        assertEquals(accented, buffer.getGraphemeAt(0, 2, false));
+        assertEquals('x', buffer.getCharAt(0, 3, false));
+        assertEquals(4, buffer.getCursorCol());
+
+        buffer.write("\n\n");
+        assertEquals(emoji + accented + "x  ", buffer.getLine(0, true));
+        assertEquals(accented, buffer.getGraphemeAt(0, 2, true));
+    }
+
+    @Test
+    @DisplayName("write() over half of a wide character should blank the other half")
+    void writeShouldBlankSplitWideCharacter() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 1, 0);
+        buffer.write("\u4e2d\u6587");
 
+        buffer.setCursor(0, 1);
+        buffer.write("x");
+
+        assertEquals(" x\u6587", buffer.getLine(0, false));
+        assertEquals("", buffer.getGraphemeAt(0, 3, false));
+
+        buffer.setCursor(0, 3);
+        buffer.write("y");
+        assertEquals(" x y", buffer.getLine(0, false));
+    }
+
+    @Test
+    @DisplayName("resize() should not split a wide character between rows")
+    void resizeShouldKeepWideCharactersWhole() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 10);
+        buffer.write("ab\u4e2d");
+
+        buffer.resize(3, 3);
+
+        assertEquals("ab ", buffer.getLine(0, false));
+        assertEquals("\u4e2d ", buffer.getLine(1, false));
+    }
+
+    @Test
+    @DisplayName("findNext() should report matches after wide characters in cells")
+    void findNextShouldMapMatchesToCells() {
+        TerminalBuffer buffer = new TerminalBuffer(8, 2, 5);
+        buffer.write("\u4e2d\u6587ab\n\n\n");
+
+        SearchHit hit = buffer.findNext("ab", 0, 0);
+
+        assertEquals(0, hit.getRow());
+        assertEquals(4, hit.getCol());
+        assertEquals(2, hit.getLength());
+        assertEquals(1, buffer.history().parallelSearch(Pattern.compile("\u6587a")).size());
+    }
+
+    @Test
+    @DisplayName("the alternate screen should keep the primary screen and stay out of the scrollback")
+    void alternateScreenShouldKeepPrimaryScreen() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.write("ab\nde");
+        buffer.setAttributes(Color.RED, Color.DEFAULT, false, false, false);
+
+        buffer.enterAlternateScreen();
+        buffer.setAttributes(Attributes.DEFAULT);
+        buffer.write("1\n2\n3\n4");
+
+        assertEquals("3  \n4  \n", buffer.getScreenContent());
+        assertEquals(0, buffer.getScrollbackSize());
+
+        buffer.exitAlternateScreen();
+
+        assertEquals("ab \nde \n", buffer.getScreenContent());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(2, buffer.getCursorCol());
+        assertEquals(Color.RED, buffer.getAttributes().fg);
+
+        buffer.enterAlternateScreen();
+        assertEquals("   \n   \n", buffer.getScreenContent());
+    }
+
+    @Test
+    @DisplayName("resize() on the alternate screen should reflow the primary screen it returns to")
+    void resizeShouldReflowPrimaryUnderAlternateScreen() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.write("abcdef");
+        buffer.enterAlternateScreen();
+        buffer.write("xy");
+
+        buffer.resize(6, 2);
+
+        assertEquals("      \n  xy  \n", buffer.getScreenContent());
+        buffer.exitAlternateScreen();
+        assertEquals("abcdef\n      \n", buffer.getScreenContent());
+        assertEquals(1, buffer.getCursorRow());
+        assertEquals(0, buffer.getCursorCol());
+    }
+
+    @Test
+    @DisplayName("restore() should rebuild the content, attributes and cursor written by save()")
+    void saveShouldRoundTrip() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        buffer.setAttributes(Color.GREEN, Color.DEFAULT, false, true, false);
+        buffer.write("hello world\n中x");
+        buffer.setAttributes(Color.RED, Color.BLUE, true, false, false);
+        buffer.setCursor(0, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buffer.save(Channels.newChannel(bytes));
+        TerminalBuffer restored = TerminalBuffer.restore(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(buffer.getFullContent(), restored.getFullContent());
+        assertEquals(buffer.getScrollbackSize(), restored.getScrollbackSize());
+        assertEquals(Color.GREEN, restored.getAttributesAt(0, 0, true).fg);
+        assertTrue(restored.getAttributesAt(0, 0, true).italic);
+        assertEquals(0, restored.getCursorRow());
+        assertEquals(3, restored.getCursorCol());
+        assertEquals(Color.RED, restored.getAttributes().fg);
+
+        buffer.write("!\nnext line");
+        restored.write("!\nnext line");
+        assertEquals(buffer.getFullContent(), restored.getFullContent());
+    }
+
+    @Test
+    @DisplayName("restore() should reject data that is not a snapshot")
+    void restoreShouldRejectOtherData() {
+        byte[] junk = "not a snapshot".getBytes();
+        assertThrows(IOException.class, () -> TerminalBuffer.restore(Channels.newChannel(new ByteArrayInputStream(junk))));
+    }
+
+    @Test
+    @DisplayName("styleRuns() should yield one run per stretch of cells with the same attributes")
+    void styleRunsShouldSplitOnAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 10);
+        buffer.write("ab");
+        buffer.setAttributes(Color.RED, Color.DEFAULT, true, false, false);
+        buffer.write("中d\n");
+        buffer.setAttributes(Attributes.DEFAULT);
+        buffer.write("xyz");
+
+        StyleRuns runs = buffer.styleRuns(0, 2, new StyleRuns());
+        assertTrue(runs.next());
+        assertEquals(0, runs.row());
+        assertEquals(0, runs.startCol());
+        assertEquals(2, runs.length());
+        assertEquals("ab", runs.text().toString());
+        assertEquals(Attributes.DEFAULT, runs.attributes());
+
+        assertTrue(runs.next());
+        assertEquals(2, runs.startCol());
+        assertEquals(3, runs.length());
+        assertEquals("中d", new String(runs.chars(), runs.charOffset(), runs.charCount()));
+        assertEquals(Color.RED, runs.attributes().fg);
+
+        assertTrue(runs.next());
+        assertEquals(5, runs.startCol());
+        assertEquals(1, runs.length());
+
+        assertTrue(runs.next());
+        assertEquals(1, runs.row());
+        assertEquals(6, runs.length());
+        assertEquals("xyz   ", runs.text().toString());
+        assertFalse(runs.next());
+    }
+
+    @Test
+    @DisplayName("Text split into several writes should end up as when written at once")
+    void splitWritesShouldMatchSingleWrite() {
+        String text = "abcdefgh\nijkl\nmn中e\u0301pqrstuvwxyz";
+        TerminalBuffer whole = new TerminalBuffer(4, 1, 20);
+        whole.write(text);
+        for (int split = 1; split < text.length(); split++) {
+            TerminalBuffer parts = new TerminalBuffer(4, 1, 20);
+            parts.write(text.substring(0, split));
+            parts.write(text.substring(split));
+            assertEquals(whole.getFullContent(), parts.getFullContent(), "split at " + split);
+            assertEquals(whole.getCursorCol(), parts.getCursorCol(), "split at " + split);
+        }
+
+        TerminalBuffer margin = new TerminalBuffer(4, 1, 10);
+        margin.write("abcd");
+        margin.write("efgh");
+        assertEquals("abcd\nefgh\n", margin.getFullContent());
+    }
+
+    @Test
+    @DisplayName("Exporting scrollback should not allocate a line per scrollback row")
+    void exportShouldReuseOneScratchLine() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(80, 24, 10_000);
+        for (int i = 0; i < 10_000; i++) {
+            buffer.write("line " + i + " of the scrollback\n");
+        }
+        StringBuilder out = new StringBuilder(81 * 10_100);
+        char[] row = new char[80];
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (int round = 0; round < 5; round++) {
+            out.setLength(0);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            buffer.appendFullContent(out);
+            for (int i = 0; i < 10_000; i++) {
+                buffer.getLine(i, true, row, 0);
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+
+        assertEquals("line 0 of the scrollback", out.substring(0, 24));
+        // A decoded 80-column line is about 500 bytes; at most a small record wrapper per row remains.
+        assertTrue(allocated < 20_000 * 100, "allocated " + allocated);
+    }
+
+    @Test
+    @DisplayName("insert() overflow on a single-row screen should continue on the next row")
+    void insertOverflowShouldWrapOnSingleRow() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 1, 10);
+        buffer.setInsertOverflowWrap(true);
+        buffer.write("abc");
+        buffer.setCursor(0, 0);
+        buffer.insert("X");
+
+        assertEquals("Xab", buffer.getLine(0, true));
+        assertEquals("c  ", buffer.getLine(0, false));
+    }
+}